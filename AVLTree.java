@@ -1,5 +1,30 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
 /**
  *
  * AVLTree
@@ -7,32 +32,317 @@ import java.util.List;
  * An implementation of a AVL Tree with
  * distinct integer keys and info
  *
+ * The heights are kept as ranks, so the same tree can also keep
+ * the WAVL or the red-black rank rule instead (see Balancing).
+ *
  */
 
-public class AVLTree {
+public class AVLTree implements Iterable<AVLTree.IAVLNode> {
+
+	private static final int PARALLEL_SORT_THRESHOLD = 1 << 16; // below it Arrays.sort is faster
+	private static final int BATCH_REBUILD_RATIO = 4; // rebuild when a batch is at least a quarter of the tree
+	private static final int SNAPSHOT_MAGIC = 0x41564C31; // "AVL1"
+	private static final int SNAPSHOT_HEADER = 16; // magic, count, CRC32 of the body
 
 	private AVLNode root;
 	public int height;
-	public AVLNode min; // Create pointer to minimal node
-	public AVLNode max; // Create pointer to maximal node
+	public AVLNode min; // Create pointer to minimal node (kept by insert, delete, split and join)
+	public AVLNode max; // Create pointer to maximal node (kept by insert, delete, split and join)
+	private boolean fingerSearch;
+	private AVLNode finger; // the last node accessed in finger mode, null if there is none
+	private Aggregate aggregate; // kept in every node if not null
+	private MembershipFilter filter; // holds every key of the tree if not null
+	private ValueArena arena; // holds the infos of new nodes if not null
+	private HotKeyCache cache; // of recently found nodes, if not null
+	private Balancing balancing = Balancing.AVL; // the rank rule kept by the heights
 	
 	// Empty constructor to create a null root
 	public AVLTree() {
 		this.root = null;
 	}
+
+  /**
+   * public AVLTree(Balancing balancing)
+   *
+   * Creates an empty tree which keeps the rank rule of balancing.
+   * All operations work the same for every rule; the heights of the nodes are their ranks.
+   * Trees made from this tree (split, the set operations, splitInto) keep its rule,
+   * and a tree of another rule joined to it is rebuilt to this rule first.
+   */
+	// Time complexity  O(1)
+	public AVLTree(Balancing balancing) {
+		this.root = null;
+		this.balancing = balancing;
+	}
+
+  /**
+   * public Balancing getBalancing()
+   *
+   * Returns the rank rule of the tree
+   */
+	// Time complexity  O(1)
+	public Balancing getBalancing() {
+		return this.balancing;
+	}
 	
 	// A constructor to create a tree with root only
 	// Sons are set in IAVLNode
 	public AVLTree(AVLNode root) {
 
-		this.root = root;
-		this.min = root;
-		this.max = root;
-		this.root.setParent(null);
-		this.height = this.root.getHeight();
+		root.setParent(null);
+		this.height = root.getHeight();
 		this.root = root.getHeight() == -1 ? null : root;
+		if (this.root != null) { // find the extremes once, they are maintained from now on
+			IAVLNode minNode = root;
+			IAVLNode maxNode = root;
+			while (minNode.getLeft().isRealNode()) {
+				minNode = minNode.getLeft();
+			}
+			while (maxNode.getRight().isRealNode()) {
+				maxNode = maxNode.getRight();
+			}
+			this.min = (AVLNode)minNode;
+			this.max = (AVLNode)maxNode;
+		}
+	}
+
+  /**
+   * public static AVLTree fromSorted(int[] keys, String[] values)
+   *
+   * Returns a perfectly balanced tree of the items (keys[j], values[j]),
+   * built directly instead of by keys.length calls to insert.
+   * precondition: keys is sorted in increasing order without duplicates,
+   * values.length == keys.length
+   */
+	// Time complexity  O(n)
+	public static AVLTree fromSorted(int[] keys, String[] values) {
+		if (keys.length == 0) {
+			return new AVLTree();
+		}
+		return new AVLTree(buildSorted(keys, values, 0, keys.length - 1));
+	}
+
+  /**
+   * public static AVLTree fromUnsorted(int[] keys, String[] values)
+   *
+   * Returns a perfectly balanced tree of the items (keys[j], values[j]) in any order.
+   * If a key appears more than once the first item is kept, like repeated insert does.
+   * Large inputs are sorted with Arrays.parallelSort.
+   * precondition: values.length == keys.length
+   */
+	// Time complexity  O(nlogn)
+	public static AVLTree fromUnsorted(int[] keys, String[] values) {
+		// Sort the key with its index in the low bits, so equal keys stay in input order
+		long[] order = new long[keys.length];
+		for (int j = 0; j < keys.length; j++) {
+			order[j] = ((long)keys[j] << 32) | j;
+		}
+		if (order.length >= PARALLEL_SORT_THRESHOLD) {
+			Arrays.parallelSort(order);
+		}
+		else {
+			Arrays.sort(order);
+		}
+		int[] sortedKeys = new int[keys.length];
+		String[] sortedValues = new String[keys.length];
+		int n = 0;
+		for (long item : order) {
+			int key = (int)(item >> 32);
+			if (n > 0 && sortedKeys[n - 1] == key) { // a later duplicate
+				continue;
+			}
+			sortedKeys[n] = key;
+			sortedValues[n] = values[(int)item];
+			n++;
+		}
+		return fromSorted(Arrays.copyOf(sortedKeys, n), Arrays.copyOf(sortedValues, n));
+	}
+
+	// A helping function to build a balanced subtree of the items in [lo, hi],
+	// the middle item is the root. Returns the root
+	// Time complexity  O(hi - lo), recursion depth O(log(hi - lo))
+	private static AVLNode buildSorted(int[] keys, String[] values, int lo, int hi) {
+		return buildSorted(lo, hi, j -> new AVLNode(keys[j], values[j]));
+	}
+
+	// The same, with the nodes made by newNode (in the value arena, if the tree has one)
+	// Time complexity  O(hi - lo)
+	// and ranked by the rule of the tree
+	private AVLNode buildNodes(int[] keys, String[] values, int lo, int hi) {
+		AVLNode node = buildSorted(lo, hi, j -> newNode(keys[j], values[j]));
+		if (this.balancing == Balancing.RED_BLACK) {
+			setRedBlackRanks(node);
+		}
+		return node;
+	}
+
+	// A helping function to rank a subtree built by buildSorted as a red-black tree:
+	// a node of size s gets rank floor(log(s+1)) - 1, so the sons of a node are 1-sons,
+	// except the larger son when s+1 is a power of 2 minus 1 (a 0-son whose sons are 1-sons)
+	// Time complexity  O(size of the subtree)
+	private static void setRedBlackRanks(AVLNode node) {
+		if (!node.isRealNode()) {
+			return;
+		}
+		node.setHeight(30 - Integer.numberOfLeadingZeros(node.size + 1));
+		setRedBlackRanks((AVLNode)node.getLeft());
+		setRedBlackRanks((AVLNode)node.getRight());
+	}
+
+	// The same, with the node of item j made by newNode
+	// Time complexity  O(hi - lo), recursion depth O(log(hi - lo))
+	private static AVLNode buildSorted(int lo, int hi, IntFunction<AVLNode> newNode) {
+		if (lo > hi) {
+			return AVLNode.VIRTUAL;
+		}
+		int mid = (lo + hi) >>> 1;
+		AVLNode node = newNode.apply(mid);
+		node.setLeft(buildSorted(lo, mid - 1, newNode));
+		node.setRight(buildSorted(mid + 1, hi, newNode));
+		node.setHeight(1 + Math.max(node.getLeft().getHeight(), node.getRight().getHeight()));
+		node.updateSize();
+		return node;
 	}
 	
+  /**
+   * public void save(Path path)
+   *
+   * Writes the tree to path in a compact binary format:
+   * a header of the magic number, the number of items and the CRC32 of the body,
+   * then the sorted keys, then every info as its UTF-8 length (-1 for null) and bytes.
+   * All numbers are big-endian. The file is on the storage device when save returns,
+   * and it is read back by load.
+   */
+	// Time complexity  O(n)
+	public void save(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			int n = size();
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			channel.position(SNAPSHOT_HEADER);
+			CRC32 crc = new CRC32();
+			int[] keys = keysToArray();
+			for (int key : keys) {
+				if (buffer.remaining() < 4) {
+					writeBody(channel, buffer, crc);
+				}
+				buffer.putInt(key);
+			}
+			for (IAVLNode node = this.min; node != null; node = ((AVLNode)node).getSuccessor()) {
+				String value = node.getValue();
+				byte[] bytes = (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+				if (buffer.remaining() < 4) {
+					writeBody(channel, buffer, crc);
+				}
+				buffer.putInt((bytes == null) ? -1 : bytes.length);
+				for (int j = 0; bytes != null && j < bytes.length; ) { // a value may be larger than the buffer
+					if (!buffer.hasRemaining()) {
+						writeBody(channel, buffer, crc);
+					}
+					int len = Math.min(buffer.remaining(), bytes.length - j);
+					buffer.put(bytes, j, len);
+					j += len;
+				}
+			}
+			writeBody(channel, buffer, crc);
+			ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER);
+			header.putInt(SNAPSHOT_MAGIC).putInt(n).putLong(crc.getValue()).flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.force(false);
+		}
+	}
+
+	// A helping function to write the buffered part of the body and add it to the checksum
+	// Time complexity  O(buffer size)
+	private static void writeBody(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+		buffer.flip();
+		crc.update(buffer.duplicate());
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+  /**
+   * public static AVLTree load(Path path)
+   *
+   * Returns the tree saved to path by save, with all info decoded.
+   */
+	// Time complexity  O(n)
+	public static AVLTree load(Path path) throws IOException {
+		return load(path, false);
+	}
+
+  /**
+   * public static AVLTree load(Path path, boolean lazyValues)
+   *
+   * Returns the tree saved to path by save. The file is memory-mapped and the tree
+   * is built directly from the sorted keys. If lazyValues is true, an info is decoded
+   * from the mapped file only when getValue is first called on its node,
+   * so the file must not be changed while the tree is used.
+   * Throws IOException if the file is not a snapshot, is corrupted or is larger than 2GB.
+   */
+	// Time complexity  O(n)
+	public static AVLTree load(Path path, boolean lazyValues) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("snapshot is larger than 2GB: " + path);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.limit() < SNAPSHOT_HEADER || buffer.getInt(0) != SNAPSHOT_MAGIC) {
+			throw new IOException("not an AVLTree snapshot: " + path);
+		}
+		int n = buffer.getInt(4);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.duplicate().position(SNAPSHOT_HEADER));
+		if (n < 0 || (long)SNAPSHOT_HEADER + 4L * n > buffer.limit() || crc.getValue() != buffer.getLong(8)) {
+			throw new IOException("corrupted AVLTree snapshot: " + path);
+		}
+		int[] keys = new int[n];
+		int[] offsets = new int[n]; // of the length of every info
+		int pos = SNAPSHOT_HEADER;
+		for (int j = 0; j < n; j++, pos += 4) {
+			keys[j] = buffer.getInt(pos);
+			if (j > 0 && keys[j - 1] >= keys[j]) {
+				throw new IOException("corrupted AVLTree snapshot: " + path);
+			}
+		}
+		for (int j = 0; j < n; j++) {
+			if (pos > buffer.limit() - 4) {
+				throw new IOException("corrupted AVLTree snapshot: " + path);
+			}
+			offsets[j] = pos;
+			int len = buffer.getInt(pos);
+			pos += 4 + Math.max(len, 0);
+			if (len < -1 || pos > buffer.limit() || pos < 0) {
+				throw new IOException("corrupted AVLTree snapshot: " + path);
+			}
+		}
+		if (n == 0) {
+			return new AVLTree();
+		}
+		if (lazyValues) {
+			return new AVLTree(buildSorted(0, n - 1, j -> new MappedNode(keys[j], buffer, offsets[j])));
+		}
+		return new AVLTree(buildSorted(0, n - 1, j -> new AVLNode(keys[j], decodeValue(buffer, offsets[j]))));
+	}
+
+	// A helping function to decode the info written at offset of buffer
+	// Time complexity  O(length of the info)
+	private static String decodeValue(ByteBuffer buffer, int offset) {
+		int len = buffer.getInt(offset);
+		if (len == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[len];
+		buffer.duplicate().position(offset + 4).get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
   /**
    * public boolean empty()
    *
@@ -54,22 +364,8 @@ public class AVLTree {
 	// Time complexity  O(logn)
   public String search(int k)
   {
-	  // Start search from root
-	  AVLNode currNode = (AVLNode) this.root;
-	  if (currNode == null) return null;
-
-	  while (currNode.isRealNode()) {
-		  if (currNode.getKey() < k) {
-			  currNode = (AVLNode)currNode.getRight();
-		  } 
-		  else if (currNode.getKey() > k) {
-			  currNode = (AVLNode)currNode.getLeft();
-		  } 
-		  else {
-			  return currNode.getValue();
-				}
-			}
-	  	return null; 
+	  AVLNode node = returnNode(k);
+	  return (node == null) ? null : node.getValue();
 		}
   /**
    * public AVLNode returnNode(int k)
@@ -82,11 +378,22 @@ public class AVLTree {
 //Time complexity  O(logn)
   public AVLNode returnNode(int k) {
 	  
-	// Start search from root
-	  AVLNode currNode = (AVLNode) this.root;
+	  if (this.cache != null) {
+		  AVLNode cached = this.cache.get(k);
+		  if (cached != null) {
+			  return cached;
+		  }
+	  }
+	  if (this.filter != null && !this.filter.mightContain(k)) { // a definite miss
+		  return null;
+	  }
+	// Start search from root, or near the finger in finger mode
+	  AVLNode currNode = searchStart(k);
 	  if (currNode == null) return null;
 
+	  AVLNode lastNode = currNode;
 	  while (currNode.isRealNode()) {
+		  lastNode = currNode;
 		  if (currNode.getKey() < k) {
 			  currNode = (AVLNode) currNode.getRight();
 		  } 
@@ -94,10 +401,366 @@ public class AVLTree {
 			  currNode = (AVLNode) currNode.getLeft();
 		  } 
 		  else {
-			  return currNode;
+			  break;
+		  }
+	  }
+	  if (this.fingerSearch) {
+		  this.finger = lastNode;
+	  }
+	  if (this.filter != null && !currNode.isRealNode()) {
+		  this.filter.falsePositives++;
+	  }
+	  if (this.cache != null && currNode.isRealNode()) {
+		  this.cache.admit(k, currNode);
+	  }
+	  return currNode.isRealNode() ? currNode : null; 
+  }
+
+  /**
+   * public void setAggregate(Aggregate aggregate)
+   *
+   * Makes every node keep the aggregate of its subtree, which insert, delete,
+   * the rotations, split and join keep up to date. null stops keeping it.
+   * A tree joined to this tree, or combined with it by a set operation,
+   * gets the aggregate of this tree.
+   */
+  // Time complexity  O(n)
+  public void setAggregate(Aggregate aggregate) {
+	  this.aggregate = aggregate;
+	  updateAggregates(this.root);
+  }
+
+  /**
+   * public long aggregate()
+   *
+   * Returns the aggregate of all the items, or the identity if the tree is empty.
+   * precondition: the tree keeps an aggregate (setAggregate)
+   */
+  // Time complexity  O(1)
+  public long aggregate() {
+	  if (this.aggregate == null) {
+		  throw new IllegalStateException("the tree keeps no aggregate");
+	  }
+	  return (this.root == null) ? this.aggregate.identity() : this.root.aggregate;
+  }
+
+  /**
+   * public long rangeAggregate(int lo, int hi)
+   *
+   * Returns the aggregate of the items with lo <= key < hi, combined in key order,
+   * or the identity if there are none.
+   * precondition: the tree keeps an aggregate (setAggregate)
+   */
+  // Time complexity  O(logn)
+  public long rangeAggregate(int lo, int hi) {
+	  Aggregate a = this.aggregate;
+	  if (a == null) {
+		  throw new IllegalStateException("the tree keeps no aggregate");
+	  }
+	  // Go down to the first node inside the range, the top of both range boundaries
+	  IAVLNode node = (this.root == null) ? AVLNode.VIRTUAL : this.root;
+	  while (node.isRealNode() && (node.getKey() < lo || node.getKey() >= hi)) {
+		  node = (node.getKey() < lo) ? node.getRight() : node.getLeft();
+	  }
+	  if (!node.isRealNode()) {
+		  return a.identity();
+	  }
+	  // Left of it every node >= lo adds itself and its right subtree, in decreasing key order
+	  long left = a.identity();
+	  for (IAVLNode n = node.getLeft(); n.isRealNode(); ) {
+		  if (n.getKey() >= lo) {
+			  left = a.combine(a.combine(a.lift(n.getKey(), n.getValue()), aggregateOf(n.getRight(), a)), left);
+			  n = n.getLeft();
+		  }
+		  else {
+			  n = n.getRight();
+		  }
+	  }
+	  // Right of it every node < hi adds its left subtree and itself, in increasing key order
+	  long right = a.identity();
+	  for (IAVLNode n = node.getRight(); n.isRealNode(); ) {
+		  if (n.getKey() < hi) {
+			  right = a.combine(right, a.combine(aggregateOf(n.getLeft(), a), a.lift(n.getKey(), n.getValue())));
+			  n = n.getRight();
+		  }
+		  else {
+			  n = n.getLeft();
+		  }
+	  }
+	  return a.combine(a.combine(left, a.lift(node.getKey(), node.getValue())), right);
+  }
+
+  // The aggregate of a subtree, the identity for a virtual node
+  // Time complexity  O(1)
+  private static long aggregateOf(IAVLNode node, Aggregate a) {
+	  return node.isRealNode() ? ((AVLNode)node).aggregate : a.identity();
+  }
+
+  /**
+   * public void enableFilter(double falsePositiveRate)
+   *
+   * Keeps a counting Bloom filter of the keys beside the tree, sized for about
+   * falsePositiveRate false positives. A search, returnNode or delete of a key which
+   * the filter rules out returns at once, without walking down the tree.
+   * insert, delete, insertAll, deleteAll, deleteRange and join keep the filter, and it is rebuilt
+   * twice as large when the tree outgrows it. split, splitInto and the set operations
+   * return trees without a filter.
+   * precondition: 0 < falsePositiveRate < 1
+   */
+  // Time complexity  O(n)
+  public void enableFilter(double falsePositiveRate) {
+	  buildFilter(Math.max(size(), MembershipFilter.MIN_CAPACITY), falsePositiveRate);
+  }
+
+  /**
+   * public void disableFilter()
+   *
+   * Drops the filter of the keys.
+   */
+  // Time complexity  O(1)
+  public void disableFilter() {
+	  this.filter = null;
+  }
+
+  /**
+   * public double filterFalsePositiveRate()
+   *
+   * Returns the fraction of the lookups of missing keys which passed the filter
+   * and walked down the tree, or 0 if there were none (or there is no filter).
+   */
+  // Time complexity  O(1)
+  public double filterFalsePositiveRate() {
+	  if (this.filter == null) {
+		  return 0;
+	  }
+	  long misses = this.filter.negatives + this.filter.falsePositives;
+	  return (misses == 0) ? 0 : (double)this.filter.falsePositives / misses;
+  }
+
+  // A helping function to add k to the filter. Once the tree has more keys than
+  // the filter was sized for, a filter twice as large is built instead
+  // Time complexity  O(1) amortized
+  private void filterAdd(int k) {
+	  if (this.filter == null) {
+		  return;
+	  }
+	  if (size() > this.filter.capacity) {
+		  buildFilter(2 * size(), this.filter.falsePositiveRate);
+	  }
+	  else {
+		  this.filter.add(k);
+	  }
+  }
+
+  // A helping function to build a filter of all the keys. The counts of the old filter are kept
+  // Time complexity  O(n)
+  private void buildFilter(int capacity, double falsePositiveRate) {
+	  MembershipFilter newFilter = new MembershipFilter(capacity, falsePositiveRate);
+	  for (IAVLNode node = this.min; node != null; node = ((AVLNode)node).getSuccessor()) {
+		  newFilter.add(node.getKey());
+	  }
+	  if (this.filter != null) {
+		  newFilter.negatives = this.filter.negatives;
+		  newFilter.falsePositives = this.filter.falsePositives;
+	  }
+	  this.filter = newFilter;
+  }
+
+  /**
+   * public void enableCache(int capacity)
+   *
+   * Keeps up to about capacity recently found nodes in a hash table by key, so that
+   * search and returnNode of a hot key return without walking down the tree.
+   * A key is looked up in a window of 8 slots; a found key takes an empty slot of its window
+   * or the slot of the first key which was not hit since the CLOCK hand last passed it.
+   * delete drops the keys of the node it removes. insert and the rotations move no items,
+   * so they keep the cache. split, join, the batch and range operations, and the set
+   * operations move nodes between trees and clear it.
+   * search changes the cache, so the tree must not be read by several threads at once.
+   */
+  // Time complexity  O(capacity)
+  public void enableCache(int capacity) {
+	  this.cache = new HotKeyCache(capacity);
+  }
+
+  /**
+   * public void disableCache()
+   *
+   * Drops the cache of found nodes.
+   */
+  // Time complexity  O(1)
+  public void disableCache() {
+	  this.cache = null;
+  }
+
+  /**
+   * public double cacheHitRatio()
+   *
+   * Returns the fraction of the lookups which the cache answered,
+   * or 0 if there were none (or there is no cache).
+   */
+  // Time complexity  O(1)
+  public double cacheHitRatio() {
+	  if (this.cache == null) {
+		  return 0;
+	  }
+	  long lookups = this.cache.hits + this.cache.misses;
+	  return (lookups == 0) ? 0 : (double)this.cache.hits / lookups;
+  }
+
+  // A helping function for the changes which move nodes to other trees or make them again:
+  // the finger and the cached nodes are forgotten
+  // Time complexity  O(1), O(capacity) with a cache
+  private void forgetNodes() {
+	  this.finger = null;
+	  if (this.cache != null) {
+		  this.cache.clear();
+	  }
+  }
+
+  /**
+   * public void enableValueArena()
+   *
+   * Keeps the infos of the tree as UTF-8 in an off-heap arena (a direct ByteBuffer):
+   * a node holds the offset and length of its info instead of a String, and getValue,
+   * search and infoToArray decode the info on every call. This saves the String and array
+   * headers of every info and keeps the infos out of the garbage collected heap.
+   * Deleted and replaced infos stay in the arena until it is compacted, which happens
+   * once it holds twice as many infos as the tree (compactValues), at an amortized O(1)
+   * per delete or put. Trees made by split and the set operations share the arena.
+   * The batch, range and set operations check for a compaction once, against the size of their result.
+   * The nodes of the tree are rebuilt.
+   * precondition: the arena holds less than 2GB
+   */
+  // Time complexity  O(n)
+  public void enableValueArena() {
+	  if (this.arena == null) {
+		  this.arena = new ValueArena(ValueArena.INITIAL_CAPACITY);
+		  rebuildNodes();
+	  }
+  }
+
+  /**
+   * public void disableValueArena()
+   *
+   * Moves the infos back into Strings on the heap. The nodes of the tree are rebuilt.
+   */
+  // Time complexity  O(n)
+  public void disableValueArena() {
+	  if (this.arena != null) {
+		  this.arena = null;
+		  rebuildNodes();
+	  }
+  }
+
+  /**
+   * public void compactValues()
+   *
+   * Copies the infos of the tree into a new arena of their exact size,
+   * which drops the deleted and replaced infos. Nothing is decoded.
+   */
+  // Time complexity  O(n)
+  public void compactValues() {
+	  if (this.arena == null) {
+		  return;
+	  }
+	  long bytes = 0;
+	  for (IAVLNode node = this.min; node != null; node = ((AVLNode)node).getSuccessor()) {
+		  if (node instanceof ArenaNode) {
+			  bytes += Math.max(((ArenaNode)node).length, 0);
+		  }
+	  }
+	  ValueArena compacted = new ValueArena((int)Math.min(Math.max(bytes, ValueArena.INITIAL_CAPACITY), ValueArena.MAX_CAPACITY));
+	  for (IAVLNode node = this.min; node != null; node = ((AVLNode)node).getSuccessor()) {
+		  if (node instanceof ArenaNode) { // nodes joined from trees without an arena keep their Strings
+			  ((ArenaNode)node).moveTo(compacted);
+		  }
+	  }
+	  this.arena = compacted;
+  }
+
+  // A helping function to compact the arena once at least half of its infos are garbage
+  // Time complexity  O(1) amortized
+  private void maybeCompactValues() {
+	  if (this.arena != null && this.arena.stored > 2L * size() + ValueArena.MIN_COMPACT) {
+		  compactValues();
+	  }
+  }
+
+  // A helping function to start a new arena before all the nodes are made again
+  // Time complexity  O(1)
+  private void freshArena() {
+	  if (this.arena != null) {
+		  this.arena = new ValueArena(ValueArena.INITIAL_CAPACITY);
+	  }
+  }
+
+  // A helping function to make the node of a new item, in the arena if the tree has one
+  // Time complexity  O(length of the info)
+  private AVLNode newNode(int k, String i) {
+	  return (this.arena == null) ? new AVLNode(k, i) : new ArenaNode(k, i, this.arena);
+  }
+
+  // A helping function to make all the nodes again with newNode
+  // Time complexity  O(n)
+  private void rebuildNodes() {
+	  int[] keys = keysToArray();
+	  String[] values = infoToArray();
+	  freshArena();
+	  this.root = (keys.length == 0) ? null : buildNodes(keys, values, 0, keys.length - 1);
+	  if (this.root != null) {
+		  this.root.setParent(null);
+	  }
+	  updateAggregates(this.root);
+	  findExtremes();
+	  forgetNodes();
+  }
+
+  /**
+   * public void setFingerSearch(boolean enabled)
+   *
+   * Turns finger mode on or off. In finger mode the tree remembers the last node
+   * accessed by search, returnNode, insert or delete, and the next of them climbs
+   * from that node to the lowest ancestor whose subtree must hold the key, then goes down.
+   * The cost is the height of that ancestor: small for keys near the finger
+   * (O(1) amortized over a scan in key order), O(logn) in the worst case.
+   * Keys beyond min or max start at min or max, so appends at either end skip the descent.
+   * In finger mode search changes the finger, so the tree must not be read by
+   * several threads at once.
+   */
+  // Time complexity  O(1)
+  public void setFingerSearch(boolean enabled) {
+	  this.fingerSearch = enabled;
+	  this.finger = null;
+  }
+
+  // The node to start a search for k from: the root, or in finger mode the lowest ancestor
+  // of the finger whose subtree must hold k. null if the tree is empty
+  // Time complexity  O(height of that ancestor)
+  private AVLNode searchStart(int k) {
+	  AVLNode node = this.finger;
+	  if (node == null) {
+		  return this.root;
+	  }
+	  if (k > this.max.getKey()) {
+		  return this.max;
+	  }
+	  if (k < this.min.getKey()) {
+		  return this.min;
+	  }
+	  // Climb while the parent is not beyond k. We stop at a son whose parent bounds
+	  // its subtree on the side of k, and the finger bounds it on the other side
+	  if (k > node.getKey()) {
+		  while (node.getParent() != null && node.getParent().getKey() <= k) {
+			  node = (AVLNode)node.getParent();
+		  }
+	  }
+	  else {
+		  while (node.getParent() != null && node.getParent().getKey() >= k) {
+			  node = (AVLNode)node.getParent();
 		  }
 	  }
-	  return null; 
+	  return node;
   }
   
   /**
@@ -111,117 +774,195 @@ public class AVLTree {
    */
 //Time complexity  O(logn)
    public int insert(int k, String i) {
-	   
-		if (search(k) != null) {
-			return -1;
-		}
-
-		IAVLNode insertNode = new AVLNode(k, i);
 
 		if (empty()) { // Tree is empty, let's create new root
-			this.root = (AVLNode)insertNode;
+			this.root = newNode(k, i);
+			this.min = this.root;
+			this.max = this.root;
+			updateAggregatePath(this.root);
+			filterAdd(k);
 			return 0;
 		}
 
-		IAVLNode currNode = insertRec(this.root, insertNode);
-		int R = currNode.getHeight() - currNode.getRight().getHeight();
-		int L = currNode.getHeight() - currNode.getLeft().getHeight();
-		
-		if (!((R==1 && L==1)||(R==1 && L==2)||(R==2 && L==1))) {
-			return insertBalance((AVLNode) currNode, 0);
+		// One descent finds both a duplicate key and the node
+		// under which the new node will be placed
+		AVLNode currNode = searchStart(k);
+		AVLNode parentNode = null;
+		while (currNode.isRealNode()) {
+			if (currNode.getKey() == k) {
+				if (this.fingerSearch) {
+					this.finger = currNode;
+				}
+				return -1;
+			}
+			parentNode = currNode;
+			currNode = (AVLNode)((k < currNode.getKey()) ? currNode.getLeft() : currNode.getRight());
 		}
-		return 0;   
-	}
-   
-   /**
-    * public int insert(int k, String i)
-    *
-    * inserts an item with key k and info i to the AVL tree.
-    * the tree must remain valid (keep its invariants).
-    * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
-    * promotion/rotation - counted as one rebalnce operation, double-rotation is counted as 2.
-    * returns -1 if an item with key k already exists in the tree.
-    * A recursive helping function to find the node under which the new node will be placed
-    */
-// Time complexity  O(logn)
-   public IAVLNode insertRec(IAVLNode currNode, IAVLNode insertNode) {
 
-	   int insertKey = insertNode.getKey();
-	   int currKey = currNode.getKey();
-
-		if (insertKey < currKey && !currNode.getLeft().isRealNode()) {
-			insertNode.setHeight(0);
-			currNode.setLeft(insertNode);
-			return currNode;
+		AVLNode insertNode = newNode(k, i);
+		if (this.fingerSearch) {
+			this.finger = insertNode;
 		}
-		
-		else if (insertKey > currKey && !currNode.getRight().isRealNode()) {
-			insertNode.setHeight(0);
-			currNode.setRight(insertNode);
-			return currNode;
+		if (k < parentNode.getKey()) {
+			parentNode.setLeft(insertNode);
 		}
-		
-		else if (insertKey < currKey && currNode.getLeft().isRealNode()) {
-			return insertRec(currNode.getLeft(), insertNode);
+		else {
+			parentNode.setRight(insertNode);
+		}
+		updateSizePath(parentNode, 1);
+		updateAggregatePath(insertNode);
+		filterAdd(k);
+		if (k < this.min.getKey()) {
+			this.min = insertNode;
+		}
+		if (k > this.max.getKey()) {
+			this.max = insertNode;
 		}
 
-		else {
-			return insertRec(currNode.getRight(), insertNode);
+		if (this.balancing == Balancing.WAVL) {
+			return wavlInsertBalance(parentNode);
+		}
+		if (this.balancing == Balancing.RED_BLACK) {
+			return redBlackInsertBalance(insertNode);
 		}
+		int R = parentNode.getHeight() - parentNode.getRight().getHeight();
+		int L = parentNode.getHeight() - parentNode.getLeft().getHeight();
+		
+		if (!((R==1 && L==1)||(R==1 && L==2)||(R==2 && L==1))) {
+			return insertBalance(parentNode, 0);
+		}
+		return 0;   
 	}
 
 
   /**
-   * public int delete(int k)
+   * public String put(int k, String i)
    *
-   * deletes an item with key k from the binary tree, if it is there;
-   * the tree must remain valid (keep its invariants).
-   * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+   * Sets the info of key k to i: replaces the info if k is in the tree,
+   * otherwise inserts (k, i). Returns the previous info, or null if k was not in the tree.
+   */
+// Time complexity  O(logn)
+   public String put(int k, String i) {
+		AVLNode node = returnNode(k);
+		if (node == null) {
+			insert(k, i);
+			return null;
+		}
+		String previous = node.getValue();
+		node.replaceValue(i);
+		updateAggregatePath(node); // the info may be part of the aggregate
+		maybeCompactValues();
+		return previous;
+	}
+
+  /**
+   * public int delete(int k)
+   *
+   * deletes an item with key k from the binary tree, if it is there;
+   * the tree must remain valid (keep its invariants).
+   * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
    * demotion/rotation - counted as one rebalnce operation, double-rotation is counted as 2.
    * returns -1 if an item with key k was not found in the tree.
    */
 // Time complexity  O(logn)
    public int delete(int k)
+   {
+		int res = deleteNode(k);
+		maybeCompactValues();
+		return res;
+   }
+
+   // The delete itself, which never compacts the value arena. The split parts of the batch
+   // and set operations share the arena of the whole tree, so they delete through this
+   // and the public operation compacts once against the size of its result
+   // Time complexity  O(logn)
+   private int deleteNode(int k)
    {
 
-		if (search(k) == null) {
+		if (this.filter != null && !this.filter.mightContain(k)) { // a definite miss
 			return -1;
 		}
-		
-		AVLNode currNode = returnNode(k);
+		// Find the node with one descent
+		AVLNode currNode = searchStart(k);
+		while (currNode != null && currNode.isRealNode() && currNode.getKey() != k) {
+			currNode = (AVLNode)((k < currNode.getKey()) ? currNode.getLeft() : currNode.getRight());
+		}
+		if (currNode == null || !currNode.isRealNode()) {
+			if (this.filter != null) {
+				this.filter.falsePositives++;
+			}
+			return -1;
+		}
+		if (this.filter != null) {
+			this.filter.remove(k);
+		}
+		AVLNode keyHolder = null; // the node which got the key of the leaf we remove
 
-		if (currNode == this.root) { //check if node is root
-			this.root = null;
-			return 0;
+		// With two children the successor is the leftmost node of the right subtree,
+		// so we continue the same descent to it
+		if (currNode.getLeft().isRealNode() && currNode.getRight().isRealNode()) {
+			AVLNode successor = (AVLNode)currNode.getRight();
+			while (successor.getLeft().isRealNode()) {
+				successor = (AVLNode)successor.getLeft();
+			}
+			currNode.copyItem(successor);
+			keyHolder = currNode;
+			currNode = successor;
 		}
-		else if (currNode.getRight().isRealNode() && !currNode.getLeft().isRealNode()) {
+		// Now currNode has at most one son, which must be a leaf
+		if (currNode.getRight().isRealNode()) {
 			AVLNode currNodeRight = (AVLNode)currNode.getRight();
-			currNode.key = currNodeRight.getKey(); currNode.value = currNodeRight.getValue();
+			currNode.copyItem(currNodeRight);
+			keyHolder = currNode;
 			currNode = currNodeRight;
 		}
-		else if (currNode.getLeft().isRealNode() && !currNode.getRight().isRealNode()) {
+		else if (currNode.getLeft().isRealNode()) {
 			AVLNode currNodeLeft = (AVLNode)currNode.getLeft();
-			currNode.key = currNodeLeft.getKey(); currNode.value = currNodeLeft.getValue();
+			currNode.copyItem(currNodeLeft);
+			keyHolder = currNode;
 			currNode = currNodeLeft;
-		}		
-		else if (currNode.getLeft().isRealNode() && currNode.getRight().isRealNode()) {
-			AVLNode successor = (AVLNode)currNode.getSuccessor();
-			currNode.key = successor.getKey(); currNode.value = successor.getValue();
-			currNode = successor;
 		}
 
 		AVLNode currP = (AVLNode)currNode.getParent();
-		if (currP == null) {
-				this.root = null;
+		if (this.fingerSearch) { // currP stays in the tree
+			this.finger = currP;
+		}
+		if (this.cache != null) { // the nodes which got other items do not match their keys anymore
+			this.cache.invalidate(k);
+			this.cache.invalidate(currNode.getKey());
+		}
+		// The leaf currNode is removed. If it was an extreme, its key moved to keyHolder,
+		// or it was deleted and the extreme is now its parent
+		if (currNode == this.min) {
+			this.min = (keyHolder != null) ? keyHolder : currP;
+		}
+		if (currNode == this.max) {
+			this.max = (keyHolder != null) ? keyHolder : currP;
+		}
+		if (currP == null) { // the root was the only node
+			this.root = null;
+			return 0;
 		} 
-		else if (currP.getLeft() == currNode) { // find where to delete
-			currP.setLeft(new AVLNode());
+		boolean fromLeft = currP.getLeft() == currNode;
+		if (fromLeft) { // find where to delete
+			currP.setLeft(AVLNode.VIRTUAL);
         } 
 		else {
-			currP.setRight(new AVLNode());
+			currP.setRight(AVLNode.VIRTUAL);
 		}
-		
-		return deleteBalance(currP,0); 
+		updateSizePath(currP, -1);
+		updateAggregatePath(currP);
+		int res;
+		if (this.balancing == Balancing.WAVL) {
+			res = wavlDeleteBalance(currP, fromLeft);
+		}
+		else if (this.balancing == Balancing.RED_BLACK) {
+			res = redBlackDeleteBalance(currP, fromLeft);
+		}
+		else {
+			res = deleteBalance(currP,0);
+		}
+		return res;
    }
 
 // Time complexity  O(logn)  
@@ -350,6 +1091,227 @@ public class AVLTree {
 		}
 		return res;
 	}
+	// The rebalancing of the WAVL rule: every rank difference is 1 or 2, and a leaf has rank 0.
+	// currNode may have a 0-son (a new leaf under a leaf, or x of link).
+	// Every promotion, demotion and rotation counts as one
+	// Time complexity  O(logn), O(1) amortized
+	private int wavlInsertBalance(AVLNode currNode) {
+		int res = 0;
+		while (currNode != null) {
+			boolean fromLeft = currNode.height == currNode.getLeft().getHeight();
+			if (!fromLeft && currNode.height != currNode.getRight().getHeight()) {
+				return res; // no 0-son
+			}
+			AVLNode son = (AVLNode)son(currNode, fromLeft);
+			if (currNode.height - son(currNode, !fromLeft).getHeight() == 1) { // 0,1: promote
+				currNode.height++;
+				res++;
+				currNode = (AVLNode)currNode.getParent();
+				continue;
+			}
+			// 0,2: rotate by the rank differences of son
+			int inner = son.height - son(son, !fromLeft).getHeight();
+			int outer = son.height - son(son, fromLeft).getHeight();
+			if (inner == 2) {
+				res += 1 + rotateUp(son);
+				currNode.height--;
+			}
+			else if (outer == 2) {
+				AVLNode innerSon = (AVLNode)son(son, !fromLeft);
+				res += 3 + rotateUp(innerSon) + rotateUp(innerSon);
+				innerSon.height++;
+				son.height--;
+				currNode.height--;
+			}
+			else { // 1,1 son, could happen when run from link
+				res += 1 + rotateUp(son);
+				son.height++;
+				currNode = (AVLNode)son.getParent();
+				continue;
+			}
+			return res;
+		}
+		return res;
+	}
+
+	// The rebalancing of the WAVL rule after the leaf son of currNode on the side fromLeft
+	// was removed: a 2,2 leaf is demoted, then a 3-son is fixed by demotions up the path
+	// and at most one (single or double) rotation, as in Haeupler, Sen and Tarjan.
+	// Every promotion, demotion and rotation counts as one
+	// Time complexity  O(logn), O(1) amortized
+	private int wavlDeleteBalance(AVLNode currNode, boolean fromLeft) {
+		int res = 0;
+		if (!currNode.getLeft().isRealNode() && !currNode.getRight().isRealNode() && currNode.height == 1) {
+			currNode.height--;
+			res++;
+			if (currNode.getParent() == null) {
+				return res;
+			}
+			fromLeft = currNode.getParent().getLeft() == currNode;
+			currNode = (AVLNode)currNode.getParent();
+		}
+		while (currNode.height - son(currNode, fromLeft).getHeight() == 3) {
+			AVLNode sibling = (AVLNode)son(currNode, !fromLeft);
+			if (currNode.height - sibling.height == 2) { // 3,2: demote
+				currNode.height--;
+				res++;
+			}
+			else if (sibling.height - sibling.getLeft().getHeight() == 2
+					&& sibling.height - sibling.getRight().getHeight() == 2) { // 3,1 with a 2,2 sibling
+				currNode.height--;
+				sibling.height--;
+				res += 2;
+			}
+			else {
+				if (sibling.height - son(sibling, !fromLeft).getHeight() == 1) {
+					res += 2 + rotateUp(sibling);
+					sibling.height++;
+					currNode.height--;
+					if (!currNode.getLeft().isRealNode() && !currNode.getRight().isRealNode()) {
+						currNode.height--;
+						res++;
+					}
+				}
+				else {
+					AVLNode innerSon = (AVLNode)son(sibling, fromLeft);
+					res += 3 + rotateUp(innerSon) + rotateUp(innerSon);
+					innerSon.height += 2;
+					sibling.height--;
+					currNode.height -= 2;
+				}
+				return res;
+			}
+			if (currNode.getParent() == null) {
+				return res;
+			}
+			fromLeft = currNode.getParent().getLeft() == currNode;
+			currNode = (AVLNode)currNode.getParent();
+		}
+		return res;
+	}
+
+	// The rebalancing of the red-black rule in ranks: every rank difference is 0 or 1,
+	// a 0-son (red) has no 0-son, and a leaf has rank 0.
+	// currNode may be a 0-son of a 0-son (a new leaf, a promoted node, or x of link).
+	// Every promotion and rotation counts as one
+	// Time complexity  O(logn), O(1) rotations
+	private int redBlackInsertBalance(AVLNode currNode) {
+		int res = 0;
+		while (true) {
+			AVLNode parent = (AVLNode)currNode.getParent();
+			if (parent == null || parent.height != currNode.height) {
+				return res;
+			}
+			AVLNode grandParent = (AVLNode)parent.getParent();
+			if (grandParent == null || grandParent.height != parent.height) {
+				return res;
+			}
+			boolean parentLeft = grandParent.getLeft() == parent;
+			if (son(grandParent, !parentLeft).getHeight() == grandParent.height) { // both sons are red
+				grandParent.height++;
+				res++;
+				currNode = grandParent;
+				continue;
+			}
+			if ((parent.getLeft() == currNode) == parentLeft) {
+				res += rotateUp(parent);
+			}
+			else {
+				res += rotateUp(currNode) + rotateUp(currNode);
+			}
+			return res;
+		}
+	}
+
+	// The rebalancing of the red-black rule after the leaf son of currNode on the side
+	// fromLeft was removed: a 2-son (double black) is fixed by demotions up the path
+	// and at most three rotations.
+	// Every promotion, demotion and rotation counts as one
+	// Time complexity  O(logn), O(1) rotations
+	private int redBlackDeleteBalance(AVLNode currNode, boolean fromLeft) {
+		int res = 0;
+		while (currNode.height - son(currNode, fromLeft).getHeight() == 2) {
+			AVLNode sibling = (AVLNode)son(currNode, !fromLeft);
+			if (sibling.height == currNode.height) { // a red sibling goes up, currNode becomes its 0-son
+				res += rotateUp(sibling);
+				continue;
+			}
+			IAVLNode far = son(sibling, !fromLeft);
+			IAVLNode near = son(sibling, fromLeft);
+			if (far.getHeight() == sibling.height) {
+				res += 2 + rotateUp(sibling);
+				sibling.height++;
+				currNode.height--;
+				return res;
+			}
+			if (near.getHeight() == sibling.height) {
+				AVLNode nearNode = (AVLNode)near;
+				res += 2 + rotateUp(nearNode) + rotateUp(nearNode);
+				nearNode.height++;
+				currNode.height--;
+				return res;
+			}
+			AVLNode parent = (AVLNode)currNode.getParent();
+			boolean wasZeroSon = parent != null && parent.height == currNode.height;
+			currNode.height--; // the sibling becomes red
+			res++;
+			if (parent == null || wasZeroSon) {
+				return res;
+			}
+			fromLeft = parent.getLeft() == currNode;
+			currNode = parent;
+		}
+		return res;
+	}
+
+	// A helping function to get the left or right son
+	// Time complexity  O(1)
+	private static IAVLNode son(AVLNode node, boolean left) {
+		return (left) ? node.getLeft() : node.getRight();
+	}
+
+	// A helping function to rotate node above its parent
+	// Time complexity  O(1)
+	private int rotateUp(AVLNode node) {
+		AVLNode parent = (AVLNode)node.getParent();
+		return (parent.getLeft() == node) ? rightRotate(parent, node) : leftRotate(parent, node);
+	}
+
+	// A helping function to recompute the aggregate of every node
+	// from currNode up to the root, if the tree keeps an aggregate
+	// Time complexity  O(logn)
+	private void updateAggregatePath(AVLNode currNode) {
+		if (this.aggregate == null) {
+			return;
+		}
+		while (currNode != null) {
+			currNode.updateAggregate(this.aggregate);
+			currNode = (AVLNode)currNode.getParent();
+		}
+	}
+
+	// A helping function to compute the aggregate of every node of a subtree
+	// bottom up, if the tree keeps an aggregate
+	// Time complexity  O(size of the subtree)
+	private void updateAggregates(AVLNode node) {
+		if (this.aggregate == null || node == null || !node.isRealNode()) {
+			return;
+		}
+		updateAggregates((AVLNode)node.getLeft());
+		updateAggregates((AVLNode)node.getRight());
+		node.updateAggregate(this.aggregate);
+	}
+
+	// A helping function to add delta to the size of every node
+	// from currNode up to the root
+	// Time complexity  O(logn)
+	public void updateSizePath(AVLNode currNode, int delta) {
+		while (currNode != null) {
+			currNode.size += delta;
+			currNode = (AVLNode)currNode.getParent();
+		}
+	}
+
 	// Time complexity  O(1)
 	public int leftRotate(AVLNode currNode, AVLNode rotateNode) {
 
@@ -369,6 +1331,12 @@ public class AVLTree {
 			}
 		} 
 		rotateNode.setLeft(currNode);
+		currNode.updateSize();
+		rotateNode.updateSize();
+		if (this.aggregate != null) {
+			currNode.updateAggregate(this.aggregate);
+			rotateNode.updateAggregate(this.aggregate);
+		}
 		return 1;
 	}
 	// Time complexity  O(1)
@@ -390,6 +1358,12 @@ public class AVLTree {
 			}
 		} 
 		rotateNode.setRight(currNode);
+		currNode.updateSize();
+		rotateNode.updateSize();
+		if (this.aggregate != null) {
+			currNode.updateAggregate(this.aggregate);
+			rotateNode.updateAggregate(this.aggregate);
+		}
 		return 1;
 	}
 
@@ -400,17 +1374,13 @@ public class AVLTree {
     * Returns the info of the item with the smallest key in the tree,
     * or null if the tree is empty
     */
-	// Time complexity  O(logn)
+	// Time complexity  O(1)
    public String min()
    {
 	   if (this.empty()) {
 			return null;  
 	   }
-	   IAVLNode min = this.root;
-	   while (min.getLeft().isRealNode()) {
-		   min = min.getLeft();
-	   }
-	   return min.getValue();
+	   return this.min.getValue();
    }
 
 
@@ -420,17 +1390,13 @@ public class AVLTree {
     * Returns the info of the item with the largest key in the tree,
     * or null if the tree is empty
     */
-// Time complexity  O(logn)
+// Time complexity  O(1)
    public String max()
    {
 	   if (this.empty()) {
 			return null;  
 	   }
-	   IAVLNode max = this.root;
-	   while (max.getRight().isRealNode()) {
-		   max = max.getRight();
-	   }
-	   return max.getValue();  
+	   return this.max.getValue();  
    }
 
   /**
@@ -442,12 +1408,8 @@ public class AVLTree {
 // Time complexity  O(n)
   public int[] keysToArray()
   {
-		int treeSize = this.size();
-	    int[] keysArray = new int[treeSize]; 
-	    char data = 'k';
-	    if (!empty()) {
-	    	treeToArrayRec(root, keysArray, null, 0, data);
-	    }
+	    int[] keysArray = new int[this.size()]; 
+	    treeToArray(keysArray, null);
 	    return keysArray;               
 	}
 
@@ -461,31 +1423,297 @@ public class AVLTree {
 //Time complexity  O(n)
   public String[] infoToArray()
   {
-	  int treeSize = this.size();
-	  String[] stringArray = new String[treeSize]; 
-	  char data = 'v';
-      if (!empty()) {
-    	  treeToArrayRec(root, null, stringArray, 0, data);
-      }
+	  String[] stringArray = new String[this.size()]; 
+	  treeToArray(null, stringArray);
       return stringArray;                   
 	}
+
+  /**
+   * public FrozenAVLTree freeze()
+   *
+   * Returns a read-only copy of the items in Eytzinger layout,
+   * for read-mostly data which is searched more than it is changed.
+   * Later changes of the tree are not seen by the copy.
+   */
+// Time complexity  O(n)
+  public FrozenAVLTree freeze()
+  {
+	  return new FrozenAVLTree(keysToArray(), infoToArray());
+  }
+
+  // A helping function to fill the keys or the info of the tree in order.
+  // Runs from the minimal node over the successors using the parent pointers,
+  // so it needs no recursion and no stack
   //complexity- O(n)
-  public int treeToArrayRec(IAVLNode node, int[] keysArray, String[] stringArray, int i, char data) { 
-	  
-	  if (!node.isRealNode()) {
-		  return i;
+  public void treeToArray(int[] keysArray, String[] stringArray) { 
+
+	  if (empty()) {
+		  return;
 	  }
-	  
-	  i = treeToArrayRec(node.getLeft(), keysArray, stringArray, i, data);
-	  if (data=='k') {
-		  keysArray[i] = node.getKey();
+	  IAVLNode node = this.root;
+	  while (node.getLeft().isRealNode()) {
+		  node = node.getLeft();
 	  }
-	  else {
-		  stringArray[i] = node.getValue();
+	  for (int i = 0; node != null; i++) {
+		  if (keysArray != null) {
+			  keysArray[i] = node.getKey();
+		  }
+		  else {
+			  stringArray[i] = node.getValue();
+		  }
+		  node = ((AVLNode)node).getSuccessor();
+	  }
+  }
+
+
+  /**
+   * public RangeCursor rangeCursor(int lo, int hi)
+   *
+   * Returns a cursor over the nodes with lo <= key < hi in increasing key order.
+   * Finding the first node is O(logn), every step is O(1) amortized and allocates nothing.
+   * The tree must not be changed while the cursor is used.
+   */
+  // Time complexity  O(logn)
+  public RangeCursor rangeCursor(int lo, int hi) {
+	  return new RangeCursor(ceilingNode(lo), lo, hi, true);
+  }
+
+  /**
+   * public RangeCursor descendingRangeCursor(int lo, int hi)
+   *
+   * Returns a cursor over the nodes with lo <= key < hi in decreasing key order.
+   * The tree must not be changed while the cursor is used.
+   */
+  // Time complexity  O(logn)
+  public RangeCursor descendingRangeCursor(int lo, int hi) {
+	  return new RangeCursor(lowerNode(hi), lo, hi, false);
+  }
+
+  /**
+   * public Iterator<IAVLNode> iterator()
+   *
+   * Returns a cursor over all the nodes in increasing key order.
+   */
+  // Time complexity  O(1)
+  public Iterator<IAVLNode> iterator() {
+	  return new RangeCursor((empty()) ? null : this.min, Integer.MIN_VALUE, Integer.MAX_VALUE + 1L, true);
+  }
+
+  /**
+   * public Spliterator<IAVLNode> spliterator()
+   *
+   * Returns a spliterator over all the nodes in increasing key order.
+   * It splits a subtree into its left subtree and (root, right subtree),
+   * so the parts follow the balanced shape of the tree and have exact sizes.
+   * The tree must not be changed while the spliterator is used.
+   */
+  // Time complexity  O(1)
+  public Spliterator<IAVLNode> spliterator() {
+	  return new NodeSpliterator(null, (empty()) ? AVLNode.VIRTUAL : this.root);
+  }
+
+  /**
+   * public IntStream keyStream()
+   *
+   * Returns a stream of the keys in increasing order, call parallel() to split it over the subtrees.
+   * The tree must not be changed while the stream runs
+   */
+  // Time complexity  O(1)
+  public IntStream keyStream() {
+	  return StreamSupport.stream(spliterator(), false).mapToInt(IAVLNode::getKey);
+  }
+
+  /**
+   * public Stream<String> infoStream()
+   *
+   * Returns a stream of the info sorted by the keys, call parallel() to split it over the subtrees.
+   * The tree must not be changed while the stream runs
+   */
+  // Time complexity  O(1)
+  public Stream<String> infoStream() {
+	  return StreamSupport.stream(spliterator(), false).map(IAVLNode::getValue);
+  }
+
+  /**
+   * public void forEachInRange(int lo, int hi, IntConsumer action)
+   *
+   * Runs action on every key with lo <= key < hi in increasing order
+   */
+  // Time complexity  O(logn + number of keys in the range)
+  public void forEachInRange(int lo, int hi, IntConsumer action) {
+	  for (IAVLNode node = ceilingNode(lo); node != null && node.getKey() < hi; node = ((AVLNode)node).getSuccessor()) {
+		  action.accept(node.getKey());
+	  }
+  }
+
+  /**
+   * public Integer floorKey(int k)
+   *
+   * Returns the largest key <= k, or null if there is none.
+   */
+  // Time complexity  O(logn)
+  public Integer floorKey(int k) {
+	  return key(floorNode(k));
+  }
+
+  /**
+   * public Integer ceilingKey(int k)
+   *
+   * Returns the smallest key >= k, or null if there is none.
+   */
+  // Time complexity  O(logn)
+  public Integer ceilingKey(int k) {
+	  return key(ceilingNode(k));
+  }
+
+  /**
+   * public Integer lowerKey(int k)
+   *
+   * Returns the largest key < k, or null if there is none.
+   */
+  // Time complexity  O(logn)
+  public Integer lowerKey(int k) {
+	  return key(lowerNode(k));
+  }
+
+  /**
+   * public Integer higherKey(int k)
+   *
+   * Returns the smallest key > k, or null if there is none.
+   */
+  // Time complexity  O(logn)
+  public Integer higherKey(int k) {
+	  return key(higherNode(k));
+  }
+
+  /**
+   * public Map.Entry<Integer, String> floorEntry(int k)
+   *
+   * Returns the item with the largest key <= k, or null if there is none.
+   */
+  // Time complexity  O(logn)
+  public Map.Entry<Integer, String> floorEntry(int k) {
+	  return entry(floorNode(k));
+  }
+
+  /**
+   * public Map.Entry<Integer, String> ceilingEntry(int k)
+   *
+   * Returns the item with the smallest key >= k, or null if there is none.
+   */
+  // Time complexity  O(logn)
+  public Map.Entry<Integer, String> ceilingEntry(int k) {
+	  return entry(ceilingNode(k));
+  }
+
+  /**
+   * public Map.Entry<Integer, String> lowerEntry(int k)
+   *
+   * Returns the item with the largest key < k, or null if there is none.
+   */
+  // Time complexity  O(logn)
+  public Map.Entry<Integer, String> lowerEntry(int k) {
+	  return entry(lowerNode(k));
+  }
+
+  /**
+   * public Map.Entry<Integer, String> higherEntry(int k)
+   *
+   * Returns the item with the smallest key > k, or null if there is none.
+   */
+  // Time complexity  O(logn)
+  public Map.Entry<Integer, String> higherEntry(int k) {
+	  return entry(higherNode(k));
+  }
+
+  /**
+   * public NavigableMap<Integer, String> asNavigableMap()
+   *
+   * Returns a view of the tree as a NavigableMap. Changes of the view change the tree
+   * and the other way around, nothing is copied.
+   */
+  // Time complexity  O(1)
+  public NavigableMap<Integer, String> asNavigableMap() {
+	  return new AVLTreeMap(this);
+  }
+
+  private static Integer key(IAVLNode node) {
+	  return (node == null) ? null : node.getKey();
+  }
+
+  // The entry is a copy, it does not change with the tree
+  private static Map.Entry<Integer, String> entry(IAVLNode node) {
+	  return (node == null) ? null : new AbstractMap.SimpleImmutableEntry<>(node.getKey(), node.getValue());
+  }
+
+  // A helping function to return the node with the largest key <= k, or null if there is none.
+  // Package-private like the other three, for the walks of AVLTreeMap
+  // Time complexity  O(logn)
+  AVLNode floorNode(int k) {
+	  AVLNode found = null;
+	  AVLNode currNode = this.root;
+	  while (currNode != null && currNode.isRealNode()) {
+		  if (currNode.getKey() <= k) {
+			  found = currNode;
+			  currNode = (AVLNode)currNode.getRight();
+		  }
+		  else {
+			  currNode = (AVLNode)currNode.getLeft();
+		  }
 	  }
-	  return treeToArrayRec(node.getRight(), keysArray, stringArray, ++i, data);
+	  return found;
   }
 
+  // A helping function to return the node with the smallest key >= k, or null if there is none
+  // Time complexity  O(logn)
+  AVLNode ceilingNode(int k) {
+	  AVLNode found = null;
+	  AVLNode currNode = this.root;
+	  while (currNode != null && currNode.isRealNode()) {
+		  if (currNode.getKey() >= k) {
+			  found = currNode;
+			  currNode = (AVLNode)currNode.getLeft();
+		  }
+		  else {
+			  currNode = (AVLNode)currNode.getRight();
+		  }
+	  }
+	  return found;
+  }
+
+  // A helping function to return the node with the smallest key > k, or null if there is none
+  // Time complexity  O(logn)
+  AVLNode higherNode(int k) {
+	  AVLNode found = null;
+	  AVLNode currNode = this.root;
+	  while (currNode != null && currNode.isRealNode()) {
+		  if (currNode.getKey() > k) {
+			  found = currNode;
+			  currNode = (AVLNode)currNode.getLeft();
+		  }
+		  else {
+			  currNode = (AVLNode)currNode.getRight();
+		  }
+	  }
+	  return found;
+  }
+
+  // A helping function to return the node with the largest key < k, or null if there is none
+  // Time complexity  O(logn)
+  AVLNode lowerNode(int k) {
+	  AVLNode found = null;
+	  AVLNode currNode = this.root;
+	  while (currNode != null && currNode.isRealNode()) {
+		  if (currNode.getKey() < k) {
+			  found = currNode;
+			  currNode = (AVLNode)currNode.getRight();
+		  }
+		  else {
+			  currNode = (AVLNode)currNode.getLeft();
+		  }
+	  }
+	  return found;
+  }
 
    /**
     * public int size()
@@ -495,24 +1723,68 @@ public class AVLTree {
     * precondition: none
     * postcondition: none
     * 
-    * calls a helping function that runs over the tree nodes recursively 
-    * and updates the size of the root
-    * Time complexity is O(n) since runs over all of the nodes
+    * every node keeps the size of its subtree, so the size of the tree
+    * is the size of the root
     */   
-//Time complexity  O(n)
+//Time complexity  O(1)
    public int size() {
-		return findSizeRec(this.root);
+		return (empty()) ? 0 : this.root.getSize();
 	}
-   
-	public int findSizeRec(IAVLNode root) {
 
-		while (root != null && root.getHeight() != -1) {
-			return findSizeRec(root.getLeft()) + findSizeRec(root.getRight()) + 1;
+   /**
+    * public int rank(int k)
+    *
+    * Returns the number of keys in the tree which are smaller than or equal to k.
+    * If k is in the tree this is its position in the sorted order (starting from 1).
+    * Apply binary search and sum the sizes of the left subtrees we pass
+    */
+// Time complexity  O(logn)
+   public int rank(int k) {
+	   int rank = 0;
+	   AVLNode currNode = this.root;
+	   if (currNode == null) return 0;
 
-		} 
-		return 0;
-	}
-	
+	   while (currNode.isRealNode()) {
+		   if (currNode.getKey() <= k) {
+			   rank += ((AVLNode)currNode.getLeft()).getSize() + 1;
+			   currNode = (AVLNode)currNode.getRight();
+		   }
+		   else {
+			   currNode = (AVLNode)currNode.getLeft();
+		   }
+	   }
+	   return rank;
+   }
+
+   /**
+    * public IAVLNode select(int i)
+    *
+    * Returns the node with the i'th smallest key in the tree (starting from 1),
+    * or null if i is not between 1 and size()
+    * Apply binary search guided by the sizes of the left subtrees
+    */
+// Time complexity  O(logn)
+   public IAVLNode select(int i) {
+	   if (i < 1 || i > size()) {
+		   return null;
+	   }
+	   AVLNode currNode = this.root;
+
+	   while (currNode.isRealNode()) {
+		   int leftSize = ((AVLNode)currNode.getLeft()).getSize();
+		   if (i <= leftSize) {
+			   currNode = (AVLNode)currNode.getLeft();
+		   }
+		   else if (i == leftSize + 1) {
+			   return currNode;
+		   }
+		   else {
+			   i -= leftSize + 1;
+			   currNode = (AVLNode)currNode.getRight();
+		   }
+	   }
+	   return null;
+   }
 	
 	
      /**
@@ -520,44 +1792,573 @@ public class AVLTree {
     *
     * Returns the root AVL node, or null if the tree is empty
     *
-    * precondition: none
-    * postcondition: none
+    * precondition: none
+    * postcondition: none
+    */
+	// Time complexity  O(1)
+   public IAVLNode getRoot()
+   {
+		return this.root;
+   }
+     /**
+    * public string split(int x)
+    *
+    * splits the tree into 2 trees according to the key x. 
+    * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+    * x does not have to be in the tree, and the tree might be empty.
+	  * precondition: none
+    * postcondition: none
+    */   
+// Time complexity  O(logn)
+   public AVLTree[] split(int x)
+   {
+		return split(x, null, null);
+	}
+
+   // The split itself. If found is not null, found[0] is set to the node of x,
+   // or to null if x is not in the tree. If rebalances is not null, the rebalancing
+   // operations of the joins are added to rebalances[0]
+   // Time complexity  O(logn)
+   private AVLTree[] split(int x, AVLNode[] found, int[] rebalances)
+   {
+		forgetNodes(); // the nodes move to the new trees
+		int res = 0;
+		AVLNode pred = lowerNode(x);
+		AVLNode succ = higherNode(x);
+		// Walk down to x, or to the virtual node where x would be
+		AVLNode xNode = this.root;
+		AVLNode xParent = null;
+		while (xNode != null && xNode.isRealNode() && xNode.getKey() != x) {
+			xParent = xNode;
+			xNode = (AVLNode)((x < xNode.getKey()) ? xNode.getLeft() : xNode.getRight());
+		}
+		AVLTree t1 = subTree(AVLNode.VIRTUAL);
+		AVLTree t2 = subTree(AVLNode.VIRTUAL);
+		if (xNode != null && xNode.isRealNode()) {
+			t1 = subTree(xNode.getLeft());
+			t2 = subTree(xNode.getRight());
+			xParent = (AVLNode)xNode.getParent();
+		}
+		else {
+			xNode = null;
+		}
+		if (found != null) {
+			found[0] = xNode;
+		}
+		
+		while (xParent != null) {
+			// join changes the parent of xParent, so keep it aside
+			AVLNode nextParent = (AVLNode)xParent.getParent();
+			if (x < xParent.getKey()) {
+				res += t2.link(xParent, subTree(xParent.getRight()));
+			} 
+			else {
+				res += t1.link(xParent, subTree(xParent.getLeft()));
+			}
+			xParent = nextParent;
+		}
+		if (rebalances != null) {
+			rebalances[0] += res;
+		}
+		// The extremes of the parts were not known during the joins,
+		// but they are the extremes of the tree and the neighbours of x
+		t1.min = (t1.empty()) ? null : this.min; t1.max = pred;
+		t2.min = succ; t2.max = (t2.empty()) ? null : this.max;
+		return new AVLTree[]{t1,t2};  
+	}
+
+   // A helping function to make a tree of a subtree without looking for its extremes
+   // (min and max stay null). Used by split, which sets the extremes at the end.
+   // The tree keeps the aggregate of this tree
+   // Time complexity  O(1)
+   private AVLTree subTree(IAVLNode root) {
+	   AVLTree tree = new AVLTree();
+	   tree.aggregate = this.aggregate;
+	   tree.arena = this.arena;
+	   tree.balancing = this.balancing;
+	   if (root.isRealNode()) {
+		   root.setParent(null);
+		   tree.root = (AVLNode)root;
+	   }
+	   return tree;
+   }
+
+   /**
+    * public int deleteRange(int lo, int hi)
+    *
+    * deletes the items with lo <= key < hi, and returns the number of deleted items.
+    * The range is cut out with two splits and the rest is joined back,
+    * so the cost does not depend on the number of deleted items
+    * (unless the tree keeps a filter, which drops every deleted key).
+    * lo and hi do not have to be in the tree.
+    */
+// Time complexity  O(logn)
+   public int deleteRange(int lo, int hi)
+   {
+	   if (lo >= hi || empty()) {
+		   return 0;
+	   }
+	   int before = size();
+	   AVLNode[] found = new AVLNode[1];
+	   AVLTree[] low = split(lo, found, null);
+	   AVLNode loNode = found[0];
+	   AVLTree[] high = low[1].split(hi, found, null);
+	   if (this.filter != null) {
+		   for (IAVLNode node = high[0].min; node != null; node = ((AVLNode)node).getSuccessor()) {
+			   this.filter.remove(node.getKey());
+		   }
+		   if (loNode != null) {
+			   this.filter.remove(lo);
+		   }
+	   }
+	   // hi is not in the range, so its node is the middle node of the join
+	   AVLTree rest = low[0];
+	   if (found[0] != null) {
+		   rest.link(found[0], high[1]);
+	   }
+	   else {
+		   rest = joinWithout(rest, high[1], null);
+	   }
+	   this.root = rest.root;
+	   this.min = rest.min;
+	   this.max = rest.max;
+	   forgetNodes();
+	   maybeCompactValues();
+	   return before - size();
+   }
+
+   /**
+    * public AVLTree[] splitInto(int[] pivots)
+    *
+    * splits the tree into pivots.length + 1 trees by the pivots:
+    * the keys of the j'th tree are in [pivots[j-1], pivots[j]) (unbounded at the ends),
+    * so a pivot which is in the tree goes to the tree on its right.
+    * The tree is split by the middle pivot and the two parts are split by their halves
+    * of the pivots, each node moves to its tree once and this tree becomes empty.
+    * The pivots do not have to be in the tree.
+	  * precondition: pivots is sorted in increasing order without duplicates
+    */
+// Time complexity  O(klog(n/k + 1)) for k pivots
+   public AVLTree[] splitInto(int[] pivots)
+   {
+	   AVLTree whole = subTree((this.root == null) ? AVLNode.VIRTUAL : this.root);
+	   whole.min = this.min;
+	   whole.max = this.max;
+	   AVLTree[] parts = new AVLTree[pivots.length + 1];
+	   splitInto(whole, pivots, 0, pivots.length, parts);
+	   this.root = null;
+	   this.min = null;
+	   this.max = null;
+	   forgetNodes();
+	   if (this.filter != null) {
+		   buildFilter(MembershipFilter.MIN_CAPACITY, this.filter.falsePositiveRate);
+	   }
+	   return parts;
+   }
+
+   // Split t, which holds the keys in [pivots[lo-1], pivots[hi]), into parts[lo..hi]
+   // Time complexity  O(klog(n/k + 1)) for k = hi - lo
+   private static void splitInto(AVLTree t, int[] pivots, int lo, int hi, AVLTree[] parts) {
+	   if (lo == hi) {
+		   parts[lo] = t;
+		   return;
+	   }
+	   int mid = (lo + hi) >>> 1;
+	   AVLNode[] found = new AVLNode[1];
+	   AVLTree[] halves = t.split(pivots[mid], found, null);
+	   if (found[0] != null) { // the pivot starts the right half
+		   halves[1].link(found[0], halves[1].subTree(AVLNode.VIRTUAL));
+	   }
+	   splitInto(halves[0], pivots, lo, mid, parts);
+	   splitInto(halves[1], pivots, mid + 1, hi, parts);
+   }
+
+   /**
+    * public BatchResult insertAll(int[] keys, String[] values)
+    *
+    * inserts the items (keys[j], values[j]) like insert would in the order of the arrays:
+    * outcomes[j] is 0 if the item was inserted and -1 if its key was already in the tree
+    * (or earlier in the batch).
+    * The batch is sorted and merged into the tree with split and join,
+    * or the tree is rebuilt when the batch is not much smaller than the tree.
+    * rebalances counts the rebalancing operations of the merge, as insert does
+    * (a rebuild counts none).
+    * precondition: values.length == keys.length
+    */
+// Time complexity  O(mlogm + mlog(n/m + 1)) for a batch of m keys
+   public BatchResult insertAll(int[] keys, String[] values)
+   {
+	   int[] outcomes = new int[keys.length];
+	   long[] order = sortBatch(keys, outcomes);
+	   int m = order.length;
+	   int[] batchKeys = new int[m];
+	   String[] batchValues = new String[m];
+	   int[] batchIndex = new int[m];
+	   for (int j = 0; j < m; j++) {
+		   batchKeys[j] = (int)(order[j] >> 32);
+		   batchIndex[j] = (int)order[j];
+		   batchValues[j] = values[batchIndex[j]];
+	   }
+	   int[] rebalances = new int[1];
+	   if ((long)m * BATCH_REBUILD_RATIO >= size()) {
+		   int[] treeKeys = keysToArray();
+		   String[] treeValues = infoToArray();
+		   int[] mergedKeys = new int[treeKeys.length + m];
+		   String[] mergedValues = new String[treeKeys.length + m];
+		   int n = 0;
+		   int i = 0;
+		   int j = 0;
+		   while (i < treeKeys.length || j < m) {
+			   if (j == m || (i < treeKeys.length && treeKeys[i] <= batchKeys[j])) {
+				   if (j < m && treeKeys[i] == batchKeys[j]) {
+					   outcomes[batchIndex[j++]] = -1;
+				   }
+				   mergedKeys[n] = treeKeys[i]; mergedValues[n++] = treeValues[i++];
+			   }
+			   else {
+				   mergedKeys[n] = batchKeys[j]; mergedValues[n++] = batchValues[j++];
+			   }
+		   }
+		   freshArena();
+		   this.root = (n == 0) ? null : buildNodes(mergedKeys, mergedValues, 0, n - 1);
+		   updateAggregates(this.root);
+	   }
+	   else {
+		   AVLTree merged = mergeInsert(this, batchKeys, batchValues, batchIndex, 0, m, outcomes, rebalances);
+		   this.root = merged.root;
+	   }
+	   if (this.root != null) {
+		   this.root.setParent(null);
+	   }
+	   findExtremes();
+	   forgetNodes();
+	   if (this.filter != null) { // the new keys are in the tree already, so a rebuild takes them all
+		   if (size() > this.filter.capacity) {
+			   buildFilter(2 * size(), this.filter.falsePositiveRate);
+		   }
+		   else {
+			   for (int j = 0; j < keys.length; j++) {
+				   if (outcomes[j] == 0) {
+					   this.filter.add(keys[j]);
+				   }
+			   }
+		   }
+	   }
+	   return new BatchResult(outcomes, rebalances[0]);
+   }
+
+   // Insert the sorted batch items [lo, hi) into t: split t by the middle batch key,
+   // merge the halves into the two parts and join them with the middle item
+   // Time complexity  O(mlog(n/m + 1)) for m = hi - lo
+   private static AVLTree mergeInsert(AVLTree t, int[] keys, String[] values, int[] index, int lo, int hi, int[] outcomes, int[] rebalances) {
+	   if (lo >= hi) {
+		   return t;
+	   }
+	   if (t.empty()) {
+		   AVLTree built = t.subTree(t.buildNodes(keys, values, lo, hi - 1));
+		   built.updateAggregates(built.root);
+		   return built;
+	   }
+	   int mid = (lo + hi) >>> 1;
+	   AVLNode[] found = new AVLNode[1];
+	   AVLTree[] parts = t.split(keys[mid], found, rebalances);
+	   AVLTree left = mergeInsert(parts[0], keys, values, index, lo, mid, outcomes, rebalances);
+	   AVLTree right = mergeInsert(parts[1], keys, values, index, mid + 1, hi, outcomes, rebalances);
+	   AVLNode x = found[0];
+	   if (x != null) { // the key was in the tree, it keeps its info
+		   outcomes[index[mid]] = -1;
+	   }
+	   else {
+		   x = t.newNode(keys[mid], values[mid]);
+	   }
+	   rebalances[0] += left.link(x, right);
+	   return left;
+   }
+
+   /**
+    * public BatchResult deleteAll(int[] keys)
+    *
+    * deletes the items with the given keys like delete would in the order of the array:
+    * outcomes[j] is 0 if the item was deleted and -1 if keys[j] was not in the tree
+    * (or was deleted earlier in the batch).
+    * The batch is sorted and cut out of the tree with split and join,
+    * or the tree is rebuilt when the batch is not much smaller than the tree.
+    * rebalances counts the rebalancing operations, as delete does (a rebuild counts none).
+    */
+// Time complexity  O(mlogm + mlog(n/m + 1)) for a batch of m keys
+   public BatchResult deleteAll(int[] keys)
+   {
+	   int[] outcomes = new int[keys.length];
+	   long[] order = sortBatch(keys, outcomes);
+	   int m = order.length;
+	   int[] batchKeys = new int[m];
+	   int[] batchIndex = new int[m];
+	   for (int j = 0; j < m; j++) {
+		   batchKeys[j] = (int)(order[j] >> 32);
+		   batchIndex[j] = (int)order[j];
+		   outcomes[batchIndex[j]] = -1; // until the key is found
+	   }
+	   int[] rebalances = new int[1];
+	   if ((long)m * BATCH_REBUILD_RATIO >= size()) {
+		   int[] treeKeys = keysToArray();
+		   String[] treeValues = infoToArray();
+		   int n = 0;
+		   int j = 0;
+		   for (int i = 0; i < treeKeys.length; i++) {
+			   while (j < m && batchKeys[j] < treeKeys[i]) {
+				   j++;
+			   }
+			   if (j < m && batchKeys[j] == treeKeys[i]) {
+				   outcomes[batchIndex[j++]] = 0;
+			   }
+			   else { // the item stays
+				   treeKeys[n] = treeKeys[i]; treeValues[n++] = treeValues[i];
+			   }
+		   }
+		   freshArena();
+		   this.root = (n == 0) ? null : buildNodes(treeKeys, treeValues, 0, n - 1);
+		   updateAggregates(this.root);
+	   }
+	   else {
+		   AVLTree merged = mergeDelete(this, batchKeys, batchIndex, 0, m, outcomes, rebalances);
+		   this.root = merged.root;
+	   }
+	   if (this.root != null) {
+		   this.root.setParent(null);
+	   }
+	   findExtremes();
+	   forgetNodes();
+	   for (int j = 0; this.filter != null && j < keys.length; j++) {
+		   if (outcomes[j] == 0) {
+			   this.filter.remove(keys[j]);
+		   }
+	   }
+	   maybeCompactValues();
+	   return new BatchResult(outcomes, rebalances[0]);
+   }
+
+   // Delete the sorted batch keys [lo, hi) from t: split t by the middle batch key,
+   // delete the halves from the two parts and join them without the middle key
+   // Time complexity  O(mlog(n/m + 1)) for m = hi - lo
+   private static AVLTree mergeDelete(AVLTree t, int[] keys, int[] index, int lo, int hi, int[] outcomes, int[] rebalances) {
+	   if (lo >= hi || t.empty()) {
+		   return t;
+	   }
+	   int mid = (lo + hi) >>> 1;
+	   AVLNode[] found = new AVLNode[1];
+	   AVLTree[] parts = t.split(keys[mid], found, rebalances);
+	   if (found[0] != null) {
+		   outcomes[index[mid]] = 0;
+	   }
+	   AVLTree left = mergeDelete(parts[0], keys, index, lo, mid, outcomes, rebalances);
+	   AVLTree right = mergeDelete(parts[1], keys, index, mid + 1, hi, outcomes, rebalances);
+	   return joinWithout(left, right, rebalances);
+   }
+
+   // A helping function to sort the keys of a batch with their indices in the low bits.
+   // A repeated key keeps its first index, the later ones get outcome -1 and are dropped
+   // Time complexity  O(mlogm)
+   private static long[] sortBatch(int[] keys, int[] outcomes) {
+	   long[] order = new long[keys.length];
+	   for (int j = 0; j < keys.length; j++) {
+		   order[j] = ((long)keys[j] << 32) | j;
+	   }
+	   if (order.length >= PARALLEL_SORT_THRESHOLD) {
+		   Arrays.parallelSort(order);
+	   }
+	   else {
+		   Arrays.sort(order);
+	   }
+	   int m = 0;
+	   for (int j = 0; j < order.length; j++) {
+		   if (m > 0 && (int)(order[m - 1] >> 32) == (int)(order[j] >> 32)) {
+			   outcomes[(int)order[j]] = -1;
+			   continue;
+		   }
+		   order[m++] = order[j];
+	   }
+	   return Arrays.copyOf(order, m);
+   }
+
+   /**
+    * public static class BatchResult
+    *
+    * The result of insertAll and deleteAll.
+    */
+   public static class BatchResult {
+
+	   public final int[] outcomes; // for every key of the batch: 0 if done, -1 as insert/delete would return
+	   public final int rebalances; // the number of rebalancing operations of the whole batch
+
+	   private BatchResult(int[] outcomes, int rebalances) {
+		   this.outcomes = outcomes;
+		   this.rebalances = rebalances;
+	   }
+   }
+
+   /**
+    * public AVLTree union(AVLTree t)
+    *
+    * Returns a tree with the items of this tree and of t. For a key in both trees
+    * the info of this tree is kept.
+    * The nodes of both trees are used for the result, so this tree and t
+    * must not be used afterwards.
+    * Runs the join based divide and conquer on the common ForkJoinPool.
+    */
+// Time complexity  O(mlog(n/m + 1)) work for sizes m <= n, O(log^2 n) span
+   public AVLTree union(AVLTree t)
+   {
+	   return setOperation(SetTask.UNION, t);
+   }
+
+   /**
+    * public AVLTree intersection(AVLTree t)
+    *
+    * Returns a tree with the items of this tree whose keys are also in t.
+    * The nodes of both trees are used for the result, so this tree and t
+    * must not be used afterwards.
+    */
+// Time complexity  O(mlog(n/m + 1)) work for sizes m <= n, O(log^2 n) span
+   public AVLTree intersection(AVLTree t)
+   {
+	   return setOperation(SetTask.INTERSECTION, t);
+   }
+
+   /**
+    * public AVLTree difference(AVLTree t)
+    *
+    * Returns a tree with the items of this tree whose keys are not in t.
+    * The nodes of both trees are used for the result, so this tree and t
+    * must not be used afterwards.
     */
-	// Time complexity  O(1)
-   public IAVLNode getRoot()
+// Time complexity  O(mlog(n/m + 1)) work for sizes m <= n, O(log^2 n) span
+   public AVLTree difference(AVLTree t)
    {
-		return this.root;
+	   return setOperation(SetTask.DIFFERENCE, t);
    }
-     /**
-    * public string split(int x)
+
+   // Run a set operation and find the extremes of the result,
+   // which the recursion on subtrees does not keep
+   // Time complexity  as the operation
+   private AVLTree setOperation(int operation, AVLTree t) {
+	   if (t.aggregate != this.aggregate) { // the nodes of t get the aggregate of this tree
+		   t.aggregate = this.aggregate;
+		   t.updateAggregates(t.root);
+	   }
+	   if (t.balancing != this.balancing) { // the ranks of t follow another rule
+		   t.balancing = this.balancing;
+		   t.rebuildNodes();
+	   }
+	   AVLTree res = ForkJoinPool.commonPool().invoke(new SetTask(operation, this, t));
+	   res.findExtremes();
+	   res.forgetNodes();
+	   res.arena = this.arena;
+	   res.balancing = this.balancing;
+	   res.maybeCompactValues();
+	   return res;
+   }
+
+   // A helping function to set min and max by walking down the spines
+   // Time complexity  O(logn)
+   private void findExtremes() {
+	   this.min = null;
+	   this.max = null;
+	   if (!empty()) {
+		   this.min = this.root;
+		   while (this.min.getLeft().isRealNode()) {
+			   this.min = (AVLNode)this.min.getLeft();
+		   }
+		   this.max = this.root;
+		   while (this.max.getRight().isRealNode()) {
+			   this.max = (AVLNode)this.max.getRight();
+		   }
+	   }
+   }
+
+   /**
+    * private static class SetTask
     *
-    * splits the tree into 2 trees according to the key x. 
-    * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
-	  * precondition: search(x) != null (i.e. you can also assume that the tree is not empty)
-    * postcondition: none
-    */   
-// Time complexity  O(logn)
-   public AVLTree[] split(int x)
-   {
-		AVLNode xNode = returnNode(x);
-		AVLTree t1 = new AVLTree((AVLNode)xNode.getLeft());
-		AVLTree t2 = new AVLTree((AVLNode)xNode.getRight());
-		AVLNode tmpNode = xNode;
-		AVLNode xParent = (AVLNode)xNode.getParent();
-		
-		while (xParent != null) {
-			if (xParent.getLeft() == tmpNode) {
-				t2.join(xParent, new AVLTree((AVLNode)xParent.getRight()));
-			} 
-			else {
-				t1.join(xParent, new AVLTree((AVLNode)xParent.getLeft()));
-			}
-			tmpNode = xParent;
-			xParent = (AVLNode) tmpNode.getParent();
-		}
-		return new AVLTree[]{t1,t2};  
-	}
-   
+    * The join based set algorithms: the root r of one tree splits the other tree,
+    * the operation runs on the two sides (in parallel for big trees),
+    * and the two results are joined with r (or without it).
+    */
+   private static class SetTask extends RecursiveTask<AVLTree> {
+
+	   private static final long serialVersionUID = 1L;
+	   private static final int UNION = 0;
+	   private static final int INTERSECTION = 1;
+	   private static final int DIFFERENCE = 2;
+	   private static final int SEQUENTIAL_THRESHOLD = 1 << 12; // smaller inputs are not forked
+
+	   private final int operation;
+	   private final AVLTree t1;
+	   private final AVLTree t2;
+
+	   private SetTask(int operation, AVLTree t1, AVLTree t2) {
+		   this.operation = operation;
+		   this.t1 = t1;
+		   this.t2 = t2;
+	   }
+
+	   protected AVLTree compute() {
+		   if (this.t1.empty()) {
+			   return (this.operation == UNION) ? this.t2 : this.t1;
+		   }
+		   if (this.t2.empty()) {
+			   return (this.operation == INTERSECTION) ? this.t2 : this.t1;
+		   }
+		   boolean parallel = this.t1.size() + this.t2.size() >= SEQUENTIAL_THRESHOLD;
+		   // The difference splits t1 by the root of t2, the others split t2 by the root of t1
+		   AVLTree rootTree = (this.operation == DIFFERENCE) ? this.t2 : this.t1;
+		   AVLTree splitTree = (this.operation == DIFFERENCE) ? this.t1 : this.t2;
+		   AVLNode r = rootTree.root;
+		   AVLTree rootLeft = rootTree.subTree(r.getLeft());
+		   AVLTree rootRight = rootTree.subTree(r.getRight());
+		   AVLNode[] found = new AVLNode[1];
+		   AVLTree[] parts = splitTree.split(r.getKey(), found, null);
+
+		   SetTask leftTask = (this.operation == DIFFERENCE) ? new SetTask(this.operation, parts[0], rootLeft) : new SetTask(this.operation, rootLeft, parts[0]);
+		   SetTask rightTask = (this.operation == DIFFERENCE) ? new SetTask(this.operation, parts[1], rootRight) : new SetTask(this.operation, rootRight, parts[1]);
+		   AVLTree leftRes;
+		   AVLTree rightRes;
+		   if (parallel) {
+			   leftTask.fork();
+			   rightRes = rightTask.compute();
+			   leftRes = leftTask.join();
+		   }
+		   else {
+			   leftRes = leftTask.compute();
+			   rightRes = rightTask.compute();
+		   }
+
+		   if (this.operation == UNION || (this.operation == INTERSECTION && found[0] != null)) {
+			   leftRes.link(r, rightRes);
+			   return leftRes;
+		   }
+		   return joinWithout(leftRes, rightRes, null);
+	   }
+   }
+
+   // Join two trees with keys(t1) < keys(t2) by taking the minimum of t2 out as the middle node.
+   // If rebalances is not null, the rebalancing operations are added to rebalances[0]
+   // Time complexity  O(logn)
+   private static AVLTree joinWithout(AVLTree t1, AVLTree t2, int[] rebalances) {
+	   if (t2.empty()) {
+		   return t1;
+	   }
+	   IAVLNode minNode = t2.root;
+	   while (minNode.getLeft().isRealNode()) {
+		   minNode = minNode.getLeft();
+	   }
+	   AVLNode x = t1.newNode(minNode.getKey(), minNode.getValue());
+	   int res = t2.deleteNode(x.getKey());
+	   res += t1.link(x, t2);
+	   if (rebalances != null) {
+		   rebalances[0] += res;
+	   }
+	   return t1;
+   }
+
    /**
     * public join(IAVLNode x, AVLTree t)
     *
@@ -565,63 +2366,471 @@ public class AVLTree {
     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
 	  * precondition: keys(x,t) < keys() or keys(x,t) > keys(). t/tree might be empty (rank = -1).
     * postcondition: none
+    * 
+    * The side of t is found by comparing x with the roots,
+    * and the extremes of the result are taken from the extremes of the two trees.
+    * If the tree keeps a filter, the keys of t and x are added to it,
+    * or it is rebuilt twice as large once the joined tree outgrows it
     */   
-// Time complexity  O(logn)
+// Time complexity  O(logn) without a filter, O(|t| + logn) with one (O(n) when it is rebuilt)
    public int join(IAVLNode x, AVLTree t)
    {
+	   boolean rebuild = false;
+	   if (this.filter != null) { // the keys of t and x join the filter of this tree
+		   rebuild = size() + t.size() + 1 > this.filter.capacity;
+		   for (IAVLNode node = t.min; !rebuild && node != null; node = ((AVLNode)node).getSuccessor()) {
+			   this.filter.add(node.getKey());
+		   }
+		   if (!rebuild) {
+			   this.filter.add(x.getKey());
+		   }
+	   }
+	   int tHeight = (t.empty()) ? -1 : t.root.getHeight();
+	   int thisHeight = (empty()) ? -1 : this.root.getHeight();
+	   link(x, t);
+	   if (rebuild) {
+		   buildFilter(2 * size(), this.filter.falsePositiveRate);
+	   }
+	   return Math.abs(tHeight-thisHeight) + 1;
+   }
 
-	   int tHeight = (t.empty()) ? 0 : t.root.getHeight();
-	   int thisHeight = (empty()) ? 0 : this.root.getHeight();
-	   int diff = tHeight-thisHeight;
-	   int diffAbs = Math.abs(tHeight-thisHeight);
-	   
-	   if (this.empty()) {
-		   t.insert(x.getKey(), x.getValue());
-		   this.root = (AVLNode)t.getRoot();
-		   return ++diffAbs;
+   // The join itself, returns the number of rebalancing operations
+   // Time complexity  O(|tree.rank - t.rank| + 1)
+   private int link(IAVLNode x, AVLTree t)
+   {
+
+	   AVLNode xNode = (AVLNode)x;
+	   int tHeight = (t.empty()) ? -1 : t.root.getHeight();
+	   int thisHeight = (empty()) ? -1 : this.root.getHeight();
+	   forgetNodes();
+	   t.forgetNodes();
+	   if (t.aggregate != this.aggregate) { // the nodes of t get the aggregate of this tree
+		   t.aggregate = this.aggregate;
+		   t.updateAggregates(t.root);
 	   }
-	   else if (t.empty()) {
-		   this.insert(x.getKey(), x.getValue());
-		   return ++diffAbs;
+	   if (t.balancing != this.balancing) { // the ranks of t follow another rule
+		   t.balancing = this.balancing;
+		   t.rebuildNodes();
+		   tHeight = (t.empty()) ? -1 : t.root.getHeight();
 	   }
+
+	   // Find which tree holds the keys smaller than x
+	   boolean tIsHigher = (!t.empty()) ? t.root.getKey() > x.getKey() : (!empty() && this.root.getKey() < x.getKey());
+	   AVLTree lowKeysTree = (tIsHigher) ? this : t;
+	   AVLTree highKeysTree = (tIsHigher) ? t : this;
+	   AVLNode newMin = (lowKeysTree.empty()) ? xNode : lowKeysTree.min;
+	   AVLNode newMax = (highKeysTree.empty()) ? xNode : highKeysTree.max;
+	   IAVLNode lowKeysRoot = (lowKeysTree.empty()) ? AVLNode.VIRTUAL : lowKeysTree.root;
+	   IAVLNode highKeysRoot = (highKeysTree.empty()) ? AVLNode.VIRTUAL : highKeysTree.root;
 	   
-	   AVLTree highRankTree = (diff < 0) ? this : t;
-	   AVLTree lowRankTree = (diff < 0) ? t : this;
-	   int highRank = (highRankTree.empty()) ? 0 : highRankTree.root.getHeight();
-	   int lowRank = (lowRankTree.empty()) ? 0 : lowRankTree.root.getHeight();
+	   AVLTree highRankTree = (tHeight > thisHeight) ? t : this;
+	   AVLTree lowRankTree = (tHeight > thisHeight) ? this : t;
+	   int lowRank = Math.min(tHeight, thisHeight);
 	   x.setHeight(1+lowRank);
 	   
-	   if (highRank==lowRank) {
-		   if (highRankTree.min.getKey() > lowRankTree.max.getKey()) {
-				x.setRight(lowRankTree.getRoot()); x.setLeft(highRankTree.getRoot());
-		   } 
-		   else {
-				x.setRight(highRankTree.getRoot()); x.setLeft(lowRankTree.getRoot());	
-		   }
+	   if (tHeight == thisHeight) { // x becomes the root (also when both trees are empty)
+		   x.setLeft(lowKeysRoot); x.setRight(highKeysRoot);
 		   x.setParent(null);
-		   this.root = (AVLNode)x;
-		   return ++diffAbs;
+		   xNode.updateSize();
+		   if (this.aggregate != null) {
+			   xNode.updateAggregate(this.aggregate);
+		   }
+		   this.root = xNode;
+		   this.min = newMin; this.max = newMax;
+		   return 0;
 	   }
+	   // tmpNode might end up as the shared virtual node, so keep its parent aside
 	   AVLNode tmpNode = highRankTree.root;
-	   if (highRankTree.min.getKey() < lowRankTree.max.getKey()) {
+	   AVLNode tmpParent = null;
+	   if (highRankTree == highKeysTree) {
 			while (tmpNode.getHeight() > lowRank) {
-				tmpNode = (AVLNode)tmpNode.getRight();
+				tmpParent = tmpNode;
+				tmpNode = (AVLNode) tmpNode.getLeft();
 			}
-			tmpNode.getParent().setRight(x);
-			x.setRight(lowRankTree.getRoot()); x.setLeft(tmpNode);
+			tmpParent.setLeft(x);
+			x.setRight(tmpNode); x.setLeft(lowKeysRoot);
 	   } 
 	   else {
 			while (tmpNode.getHeight() > lowRank) {
-				tmpNode = (AVLNode) tmpNode.getLeft();
+				tmpParent = tmpNode;
+				tmpNode = (AVLNode)tmpNode.getRight();
 			}
-			tmpNode.getParent().setLeft(x);
-			x.setRight(tmpNode); x.setLeft(lowRankTree.getRoot());
+			tmpParent.setRight(x);
+			x.setRight(highKeysRoot); x.setLeft(tmpNode);
 		}
-	   insertBalance((AVLNode)x.getParent(),0);	
+	   // x's subtree is new, so update the sizes from x up to the root
+	   for (AVLNode sizeNode = xNode; sizeNode != null; sizeNode = (AVLNode)sizeNode.getParent()) {
+		   sizeNode.updateSize();
+	   }
+	   updateAggregatePath(xNode);
+	   // set the root before balancing, since rotations may replace it
 	   this.root = highRankTree.root;
-	   return ++diffAbs;   
+	   int res;
+	   if (this.balancing == Balancing.WAVL) {
+		   res = wavlInsertBalance((AVLNode)x.getParent());
+	   }
+	   else if (this.balancing == Balancing.RED_BLACK) {
+		   res = redBlackInsertBalance(xNode);
+	   }
+	   else {
+		   res = insertBalance((AVLNode)x.getParent(),0);
+	   }
+	   this.min = newMin; this.max = newMax;
+	   return res;   
+   }
+
+   /**
+    * public static class RangeCursor
+    *
+    * A cursor over the nodes of a key range, moving by successor
+    * (or predecessor) links. It keeps only the next node and the bounds.
+    */
+   public static class RangeCursor implements Iterator<IAVLNode> {
+
+	   private AVLNode next;
+	   private final long lo;
+	   private final long hi; // long, so the range of iterator() can include Integer.MAX_VALUE
+	   private final boolean ascending;
+
+	   private RangeCursor(AVLNode first, long lo, long hi, boolean ascending) {
+		   this.lo = lo;
+		   this.hi = hi;
+		   this.ascending = ascending;
+		   this.next = first;
+		   if (first != null && !inRange(first.getKey())) {
+			   this.next = null;
+		   }
+	   }
+
+	   private boolean inRange(int key) {
+		   return key >= this.lo && key < this.hi;
+	   }
+
+	   // Time complexity  O(1)
+	   public boolean hasNext() {
+		   return this.next != null;
+	   }
+
+	   // Returns the next node of the range
+	   // Time complexity  O(1) amortized
+	   public IAVLNode next() {
+		   if (this.next == null) {
+			   throw new NoSuchElementException();
+		   }
+		   AVLNode curr = this.next;
+		   AVLNode following = (AVLNode)((this.ascending) ? curr.getSuccessor() : curr.getPredecessor());
+		   this.next = (following != null && inRange(following.getKey())) ? following : null;
+		   return curr;
+	   }
+   }
+
+   /**
+    * private static class NodeSpliterator
+    *
+    * Covers the node first (if not null) and then the subtree of node,
+    * which follow each other in key order.
+    * Once the traversal started, the nodes are visited by successor links.
+    * Changes to the tree are not detected, so it must not be changed during the traversal.
+    */
+   private static class NodeSpliterator implements Spliterator<IAVLNode> {
+
+	   private static final int SPLIT_THRESHOLD = 64; // smaller parts are not split
+
+	   private AVLNode first;
+	   private AVLNode subtree;
+	   private AVLNode next; // the next node to visit once the traversal started
+	   private int remaining;
+
+	   private NodeSpliterator(AVLNode first, AVLNode subtree) {
+		   this.first = first;
+		   this.subtree = subtree;
+		   this.remaining = ((first != null) ? 1 : 0) + subtree.getSize();
+	   }
+
+	   // Time complexity  O(1)
+	   public Spliterator<IAVLNode> trySplit() {
+		   if (this.next != null || !this.subtree.isRealNode() || this.remaining < SPLIT_THRESHOLD) {
+			   return null;
+		   }
+		   // (first, subtree) becomes (first, left subtree) + (root, right subtree)
+		   NodeSpliterator prefix = new NodeSpliterator(this.first, (AVLNode)this.subtree.getLeft());
+		   this.first = this.subtree;
+		   this.subtree = (AVLNode)this.subtree.getRight();
+		   this.remaining -= prefix.remaining;
+		   return prefix;
+	   }
+
+	   // Time complexity  O(1) amortized
+	   public boolean tryAdvance(Consumer<? super IAVLNode> action) {
+		   if (this.remaining == 0) {
+			   return false;
+		   }
+		   if (this.next == null) { // start the traversal
+			   this.next = this.first;
+			   if (this.next == null) {
+				   this.next = this.subtree;
+				   while (this.next.getLeft().isRealNode()) {
+					   this.next = (AVLNode)this.next.getLeft();
+				   }
+			   }
+		   }
+		   AVLNode curr = this.next;
+		   this.remaining--;
+		   this.next = (this.remaining > 0) ? (AVLNode)curr.getSuccessor() : null;
+		   action.accept(curr);
+		   return true;
+	   }
+
+	   // Time complexity  O(1)
+	   public long estimateSize() {
+		   return this.remaining;
+	   }
+
+	   public int characteristics() {
+		   return ORDERED | SORTED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+	   }
+
+	   public Comparator<? super IAVLNode> getComparator() {
+		   return Comparator.comparingInt(IAVLNode::getKey);
+	   }
+   }
+
+	/**
+    * private static class MembershipFilter
+    *
+    * A counting Bloom filter of the keys: every key adds one to hashes counters
+    * of 4 bits, and removing it subtracts one. A counter which reached 15 is not changed
+    * anymore, so it may cause false positives but never false negatives.
+    */
+   private static class MembershipFilter {
+
+	   private static final int MIN_CAPACITY = 1 << 10;
+	   private static final int MAX_COUNT = 15;
+
+	   private final long[] counters; // 16 counters in a long
+	   private final int mask;
+	   private final int hashes;
+	   private final int capacity; // number of keys the filter is sized for
+	   private final double falsePositiveRate;
+	   private long negatives; // lookups the filter answered
+	   private long falsePositives; // lookups of missing keys the filter passed
+
+	   private MembershipFilter(int capacity, double falsePositiveRate) {
+		   double ln2 = Math.log(2);
+		   double bits = -capacity * Math.log(falsePositiveRate) / (ln2 * ln2);
+		   int m = 64;
+		   while (m < bits && m < (1 << 30)) {
+			   m <<= 1;
+		   }
+		   this.counters = new long[m >>> 4];
+		   this.mask = m - 1;
+		   this.hashes = (int)Math.max(1, Math.min(16, Math.round((double)m / capacity * ln2)));
+		   this.capacity = capacity;
+		   this.falsePositiveRate = falsePositiveRate;
+	   }
+
+	   // Time complexity  O(hashes)
+	   private boolean mightContain(int k) {
+		   long h = mix(k);
+		   int h1 = (int)h;
+		   int h2 = (int)(h >>> 32) | 1;
+		   for (int j = 0; j < this.hashes; j++) {
+			   if (count((h1 + j * h2) & this.mask) == 0) {
+				   this.negatives++;
+				   return false;
+			   }
+		   }
+		   return true;
+	   }
+
+	   // Time complexity  O(hashes)
+	   private void add(int k) {
+		   change(k, 1);
+	   }
+
+	   // Time complexity  O(hashes)
+	   private void remove(int k) {
+		   change(k, -1);
+	   }
+
+	   private void change(int k, int delta) {
+		   long h = mix(k);
+		   int h1 = (int)h;
+		   int h2 = (int)(h >>> 32) | 1;
+		   for (int j = 0; j < this.hashes; j++) {
+			   int index = (h1 + j * h2) & this.mask;
+			   int count = count(index);
+			   if (count != MAX_COUNT && count + delta >= 0) {
+				   this.counters[index >>> 4] += (long)delta << ((index & 15) << 2);
+			   }
+		   }
+	   }
+
+	   private int count(int index) {
+		   return (int)(this.counters[index >>> 4] >>> ((index & 15) << 2)) & MAX_COUNT;
+	   }
+
+	   // The finalizer of SplitMix64, so near keys get unrelated counters
+	   private static long mix(int k) {
+		   long z = k * 0x9E3779B97F4A7C15L;
+		   z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		   z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		   return z ^ (z >>> 31);
+	   }
+   }
+
+   /**
+    * private static class HotKeyCache
+    *
+    * An open addressed table from keys to their nodes. A key lives in the window of
+    * WAYS slots chosen by its hash, so a lookup reads one window of keys and never probes further.
+    * A full window evicts by CLOCK: its hand clears the referenced bits of the slots it passes
+    * and stops at the first slot which was not referenced since.
+    */
+   private static class HotKeyCache {
+
+	   private static final int WAYS = 8; // the keys of a window fill half a cache line
+
+	   private final int[] keys;
+	   private final AVLNode[] nodes; // null for an empty slot
+	   private final boolean[] referenced;
+	   private final byte[] hands; // the CLOCK hand of every window
+	   private final int windowMask;
+	   private long hits;
+	   private long misses;
+
+	   private HotKeyCache(int capacity) {
+		   int windows = 1;
+		   while (windows * WAYS < capacity && windows < (1 << 26)) {
+			   windows <<= 1;
+		   }
+		   this.keys = new int[windows * WAYS];
+		   this.nodes = new AVLNode[windows * WAYS];
+		   this.referenced = new boolean[windows * WAYS];
+		   this.hands = new byte[windows];
+		   this.windowMask = windows - 1;
+	   }
+
+	   // A node which got another item from delete is not returned
+	   // Time complexity  O(WAYS)
+	   private AVLNode get(int k) {
+		   int base = window(k) * WAYS;
+		   for (int slot = base; slot < base + WAYS; slot++) {
+			   if (this.keys[slot] == k && this.nodes[slot] != null && this.nodes[slot].getKey() == k) {
+				   this.referenced[slot] = true;
+				   this.hits++;
+				   return this.nodes[slot];
+			   }
+		   }
+		   this.misses++;
+		   return null;
+	   }
+
+	   // Put k, which was just found, into its window (dropping an old slot of k):
+	   // into an empty slot, or else the slot of the CLOCK hand.
+	   // A new key is not referenced, so keys found only once are the first to go
+	   // Time complexity  O(WAYS)
+	   private void admit(int k, AVLNode node) {
+		   int w = window(k);
+		   int base = w * WAYS;
+		   invalidate(k);
+		   for (int slot = base; slot < base + WAYS; slot++) {
+			   if (this.nodes[slot] == null) {
+				   this.keys[slot] = k;
+				   this.nodes[slot] = node;
+				   return;
+			   }
+		   }
+		   int hand = this.hands[w];
+		   while (this.referenced[base + hand]) {
+			   this.referenced[base + hand] = false;
+			   hand = (hand + 1) % WAYS;
+		   }
+		   this.keys[base + hand] = k;
+		   this.nodes[base + hand] = node;
+		   this.hands[w] = (byte)((hand + 1) % WAYS);
+	   }
+
+	   // Time complexity  O(WAYS)
+	   private void invalidate(int k) {
+		   int base = window(k) * WAYS;
+		   for (int slot = base; slot < base + WAYS; slot++) {
+			   if (this.keys[slot] == k) {
+				   this.nodes[slot] = null;
+				   this.referenced[slot] = false;
+			   }
+		   }
+	   }
+
+	   // Time complexity  O(capacity)
+	   private void clear() {
+		   Arrays.fill(this.nodes, null);
+		   Arrays.fill(this.referenced, false);
+	   }
+
+	   private int window(int k) {
+		   return (int)MembershipFilter.mix(k) & this.windowMask;
+	   }
    }
 
+	/**
+	 * public enum Balancing
+	 *
+	 * The rank rule a tree keeps, chosen when the tree is created.
+	 * AVL: rank differences 1,1 or 1,2 (the heights), the shallowest trees, for search-heavy use.
+	 * WAVL: rank differences 1 or 2 and leaves of rank 0. Inserts rebalance as AVL,
+	 * deletes need O(1) amortized rebalancing operations and at most one (double) rotation.
+	 * RED_BLACK: rank differences 0 or 1 with no 0-son of a 0-son (the red nodes),
+	 * at most two rotations per insert and three per delete.
+	 * insert and delete return the number of rebalancing operations for every rule,
+	 * so the rules can be compared on a workload.
+	 */
+	public enum Balancing { AVL, WAVL, RED_BLACK }
+
+	/**
+	 * public interface Aggregate
+	 *
+	 * An associative way to combine the items of a subtree into a long (a monoid).
+	 * combine must be associative and identity must be neutral for it;
+	 * it need not be commutative, the items are combined in key order.
+	 */
+	public interface Aggregate {
+
+		public long identity(); // neutral for combine
+		public long lift(int key, String value); // the aggregate of a single item
+		public long combine(long left, long right); // the aggregate of left followed by right
+
+		Aggregate COUNT = new Aggregate() {
+			public long identity() { return 0; }
+			public long lift(int key, String value) { return 1; }
+			public long combine(long left, long right) { return left + right; }
+		};
+
+		Aggregate KEY_SUM = new Aggregate() {
+			public long identity() { return 0; }
+			public long lift(int key, String value) { return key; }
+			public long combine(long left, long right) { return left + right; }
+		};
+
+		// The minimum of metric over the info
+		public static Aggregate minOf(ToLongFunction<String> metric) {
+			return new Aggregate() {
+				public long identity() { return Long.MAX_VALUE; }
+				public long lift(int key, String value) { return metric.applyAsLong(value); }
+				public long combine(long left, long right) { return Math.min(left, right); }
+			};
+		}
+
+		// The maximum of metric over the info
+		public static Aggregate maxOf(ToLongFunction<String> metric) {
+			return new Aggregate() {
+				public long identity() { return Long.MIN_VALUE; }
+				public long lift(int key, String value) { return metric.applyAsLong(value); }
+				public long combine(long left, long right) { return Math.max(left, right); }
+			};
+		}
+	}
+
 	/**
 	   * public interface IAVLNode
 	   * ! Do not delete or modify this - otherwise all tests will fail !
@@ -648,21 +2857,32 @@ public class AVLTree {
    * another file.
    * This class can and must be modified.
    * (It must implement IAVLNode)
+   * 
+   * The class is static so nodes do not keep a reference to their tree,
+   * and all virtual leaves are the single shared VIRTUAL node.
    */
-  public class AVLNode implements IAVLNode{
+  public static class AVLNode implements IAVLNode{
+		
+		// The shared virtual node. It is never modified -
+		// setting its parent or height is ignored
+		public static final AVLNode VIRTUAL = new AVLNode();
 		
 	    private int key;
 		private int height;
+		private int size; // number of real nodes in the subtree (0 for virtual nodes)
+		private long aggregate; // of the subtree, if the tree keeps an aggregate
 		private String value;
 		private IAVLNode left;
 		private IAVLNode right;
 		private IAVLNode parent;
 		
 		// Create empty constructor for a virtual node
+		// (use VIRTUAL instead of creating new virtual nodes)
 		public AVLNode() {
 
 			this.key = -1;
 			this.height = -1;
+			this.size = 0;
 			this.value = null;
 			this.left = null;
 			this.right = null;
@@ -672,11 +2892,10 @@ public class AVLTree {
 		public AVLNode(int key, String value) {
 
 			this.key = key;
+			this.size = 1;
 			this.value = value;
-			this.left = new AVLNode();
-			this.right = new AVLNode();
-			this.left.setParent(this);
-			this.right.setParent(this);
+			this.left = VIRTUAL;
+			this.right = VIRTUAL;
 
 		}
 		// Time complexity  O(1)
@@ -714,6 +2933,9 @@ public class AVLTree {
 		// Time complexity  O(1)
 		public void setParent(IAVLNode node)
 		{
+			if (this == VIRTUAL) {
+				return;
+			}
 			this.parent = node;
 		}
 		// Time complexity  O(1)
@@ -730,13 +2952,47 @@ public class AVLTree {
 		// Time complexity  O(1)
     public void setHeight(int height)
     {
+		if (this == VIRTUAL) {
+			return;
+		}
 		this.height = height;
     }
+    // Time complexity  O(1)
+    public int getSize()
+    {
+		return this.size;
+    }
+    // Recompute the subtree size from the sizes of the children
+    // Time complexity  O(1)
+    public void updateSize()
+    {
+		this.size = ((AVLNode)this.left).size + ((AVLNode)this.right).size + 1;
+    }
+    // Time complexity  O(1)
+    public long getAggregate()
+    {
+		return this.aggregate;
+    }
+    // Recompute the subtree aggregate from the aggregates of the children
+    // Time complexity  O(1)
+    public void updateAggregate(Aggregate a)
+    {
+		this.aggregate = a.combine(a.combine(aggregateOf(this.left, a), a.lift(this.key, getValue())), aggregateOf(this.right, a));
+    }
+    // Take over the item of node, delete moves items between nodes
+    // Time complexity  O(1)
+    void copyItem(AVLNode node)
+    {
+		this.key = node.key;
+		this.value = node.getValue();
+    }
+    // Time complexity  O(1)
+    void replaceValue(String value)
+    {
+		this.value = value;
+    }
     public int getHeight()// Time complexity  O(1)
     {
-		if (empty()) {
-			return 0;
-		}
     	return this.height;
     }
 	
@@ -750,8 +3006,8 @@ public class AVLTree {
 		return L - R;
 	}
 	
-	// A helping function run during deletion when successor takes 
-	// place of the deleted node
+	// A helping function to return the node with the next key,
+	// or null if this is the maximal node
     // Time complexity is O(logn) since we are moving at tree height only once
 	public IAVLNode getSuccessor() {
 		IAVLNode successor = this;
@@ -764,12 +3020,196 @@ public class AVLTree {
 			return successor;			
 		} 
 
-		while (successor.getParent() != null && successor.getParent().getKey() > successor.getKey()) {
+		// climb while we are a right son, the successor is the first parent we reach from the left
+		while (successor.getParent() != null && successor.getParent().getRight() == successor) {
 				successor = successor.getParent();
 			}
 		return successor.getParent();
 		}
+
+	// A helping function to return the node with the previous key,
+	// or null if this is the minimal node
+    // Time complexity is O(logn) since we are moving at tree height only once
+	public IAVLNode getPredecessor() {
+		IAVLNode predecessor = this;
+		if (this.getLeft().isRealNode()) {
+			predecessor = this.getLeft();
+			
+			while (predecessor.getRight().isRealNode()) {
+				predecessor = predecessor.getRight();
+			}
+			return predecessor;			
+		} 
+
+		// climb while we are a left son, the predecessor is the first parent we reach from the right
+		while (predecessor.getParent() != null && predecessor.getParent().getLeft() == predecessor) {
+				predecessor = predecessor.getParent();
+			}
+		return predecessor.getParent();
+		}
   	}
-}
-  
 
+  /**
+   * private static class MappedNode
+   *
+   * A node loaded by load(path, true). Its info stays in the mapped file
+   * until getValue is first called. Once an info is set on the node
+   * (delete copies infos between nodes) the file is not read again.
+   */
+  private static class MappedNode extends AVLNode {
+
+	  private static final String PENDING = new String(); // compared by reference only
+
+	  private final ByteBuffer buffer;
+	  private final int offset;
+
+	  private MappedNode(int key, ByteBuffer buffer, int offset) {
+		  super(key, PENDING);
+		  this.buffer = buffer;
+		  this.offset = offset;
+	  }
+
+	  // Time complexity  O(length of the info) on the first call, O(1) after it
+	  @Override
+	  public String getValue() {
+		  String value = super.getValue();
+		  if (value == PENDING) {
+			  value = decodeValue(this.buffer, this.offset);
+			  ((AVLNode)this).value = value;
+		  }
+		  return value;
+	  }
+  }
+
+  /**
+   * private static class ArenaNode
+   *
+   * A node of a tree with a value arena (enableValueArena). Its info is the UTF-8 bytes
+   * at [offset, offset + length) of the arena, decoded on every getValue.
+   */
+  private static class ArenaNode extends AVLNode {
+
+	  private ValueArena arena;
+	  private int offset;
+	  private int length; // -1 for null info
+
+	  private ArenaNode(int key, String value, ValueArena arena) {
+		  super(key, null);
+		  this.arena = arena;
+		  replaceValue(value);
+	  }
+
+	  // Time complexity  O(length of the info)
+	  @Override
+	  public String getValue() {
+		  return (this.length == -1) ? null : this.arena.decode(this.offset, this.length);
+	  }
+
+	  // The info is appended to the arena, the old bytes become garbage
+	  // Time complexity  O(length of the info)
+	  @Override
+	  void replaceValue(String value) {
+		  if (value == null) {
+			  this.length = -1;
+			  return;
+		  }
+		  byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		  this.offset = this.arena.append(bytes);
+		  this.length = bytes.length;
+	  }
+
+	  // Another arena node passes its bytes without decoding them
+	  // Time complexity  O(1), O(length of the info) for other nodes
+	  @Override
+	  void copyItem(AVLNode node) {
+		  if (!(node instanceof ArenaNode)) {
+			  super.copyItem(node);
+			  replaceValue(super.getValue());
+			  ((AVLNode)this).value = null;
+			  return;
+		  }
+		  ArenaNode from = (ArenaNode)node;
+		  ((AVLNode)this).key = from.getKey();
+		  this.arena = from.arena;
+		  this.offset = from.offset;
+		  this.length = from.length;
+	  }
+
+	  // Copy the bytes of the info into arena
+	  // Time complexity  O(length of the info)
+	  private void moveTo(ValueArena to) {
+		  if (this.length != -1) {
+			  this.offset = to.copy(this.arena, this.offset, this.length);
+		  }
+		  this.arena = to;
+	  }
+  }
+
+  /**
+   * private static final class ValueArena
+   *
+   * Infos as UTF-8 bytes, appended one after the other to a direct ByteBuffer,
+   * which is replaced by one twice as large when it is full.
+   * Nothing is freed: compactValues copies the live infos into a new arena.
+   */
+  private static final class ValueArena {
+
+	  private static final int INITIAL_CAPACITY = 1 << 16;
+	  private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+	  private static final int MIN_COMPACT = 1 << 10; // smaller arenas are not compacted
+
+	  private ByteBuffer buffer;
+	  private int used;
+	  private long stored; // infos appended, also the ones no node holds any more
+
+	  private ValueArena(int capacity) {
+		  this.buffer = ByteBuffer.allocateDirect(capacity);
+	  }
+
+	  // Returns the offset of the bytes. Readers use duplicates of the buffer,
+	  // so they never see its position move
+	  // Time complexity  O(length) amortized
+	  private int append(byte[] bytes) {
+		  int offset = reserve(bytes.length);
+		  this.buffer.duplicate().position(offset).put(bytes);
+		  return offset;
+	  }
+
+	  // Copy length bytes at offset of from, and return their offset here
+	  // Time complexity  O(length) amortized
+	  private int copy(ValueArena from, int offset, int length) {
+		  int to = reserve(length);
+		  ByteBuffer src = from.buffer.duplicate();
+		  src.limit(offset + length).position(offset);
+		  this.buffer.duplicate().position(to).put(src);
+		  return to;
+	  }
+
+	  // Time complexity  O(length)
+	  private String decode(int offset, int length) {
+		  byte[] bytes = new byte[length];
+		  this.buffer.duplicate().position(offset).get(bytes);
+		  return new String(bytes, StandardCharsets.UTF_8);
+	  }
+
+	  // Make room for length more bytes and return where they go
+	  // Time complexity  O(1) amortized
+	  private int reserve(int length) {
+		  if (length > MAX_CAPACITY - this.used) {
+			  throw new IllegalStateException("value arena is larger than 2GB");
+		  }
+		  if (this.used + length > this.buffer.capacity()) {
+			  long capacity = Math.max(2L * this.buffer.capacity(), (long)this.used + length);
+			  ByteBuffer larger = ByteBuffer.allocateDirect((int)Math.min(capacity, MAX_CAPACITY));
+			  ByteBuffer old = this.buffer.duplicate();
+			  old.limit(this.used).position(0);
+			  larger.put(old);
+			  this.buffer = larger;
+		  }
+		  int offset = this.used;
+		  this.used += length;
+		  this.stored++;
+		  return offset;
+	  }
+  }
+}
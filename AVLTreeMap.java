@@ -0,0 +1,544 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ *
+ * AVLTreeMap
+ *
+ * A view of an AVLTree as a NavigableMap<Integer, String> (AVLTree.asNavigableMap).
+ * Nothing is copied: the view reads and changes the tree itself.
+ *
+ * A view covers the keys in [lo, hi] of the tree, in increasing or decreasing order.
+ * The keys are ints, so an exclusive bound is the inclusive bound next to it,
+ * and sub maps, head maps, tail maps and descending maps are views with other bounds.
+ * The navigation methods are single descents of the tree, and size is two ranks,
+ * so all of them are O(logn).
+ *
+ * Iterators support remove. Other changes of the tree while iterating
+ * leave the iterator undefined. Null keys are not allowed, null info is.
+ *
+ */
+
+public class AVLTreeMap extends AbstractMap<Integer, String> implements NavigableMap<Integer, String> {
+
+	private final AVLTree tree;
+	private final long lo; // the smallest key of the view, the view is empty if lo > hi
+	private final long hi; // the largest key of the view
+	private final boolean descending;
+
+  /**
+   * public AVLTreeMap(AVLTree tree)
+   *
+   * A view of all the keys of tree in increasing order.
+   */
+	public AVLTreeMap(AVLTree tree) {
+		this(tree, Integer.MIN_VALUE, Integer.MAX_VALUE, false);
+	}
+
+	private AVLTreeMap(AVLTree tree, long lo, long hi, boolean descending) {
+		this.tree = tree;
+		this.lo = lo;
+		this.hi = hi;
+		this.descending = descending;
+	}
+
+	// Time complexity  O(1)
+	private boolean inRange(long k) {
+		return this.lo <= k && k <= this.hi;
+	}
+
+	private boolean isFullRange() {
+		return this.lo == Integer.MIN_VALUE && this.hi == Integer.MAX_VALUE;
+	}
+
+	// Time complexity  O(1)
+	private int checkedKey(Object key) {
+		int k = (Integer)key; // null keys throw NullPointerException, like TreeMap
+		if (!inRange(k)) {
+			throw new IllegalArgumentException("key out of range: " + k);
+		}
+		return k;
+	}
+
+	// The nodes of the view in increasing key order: smallest >= k, largest <= k
+	// Time complexity  O(logn)
+	private AVLTree.AVLNode ceilingNode(long k) {
+		long from = Math.max(k, this.lo);
+		if (from > this.hi) {
+			return null;
+		}
+		AVLTree.AVLNode node = this.tree.ceilingNode((int)from);
+		return (node == null || node.getKey() > this.hi) ? null : node;
+	}
+
+	// Time complexity  O(logn)
+	private AVLTree.AVLNode floorNode(long k) {
+		long to = Math.min(k, this.hi);
+		if (to < this.lo) {
+			return null;
+		}
+		AVLTree.AVLNode node = this.tree.floorNode((int)to);
+		return (node == null || node.getKey() < this.lo) ? null : node;
+	}
+
+	// The navigation of the view: in a descending view lower means larger keys
+	// Time complexity  O(logn)
+	private AVLTree.AVLNode lowerNode(int k) {
+		return (this.descending) ? ceilingNode((long)k + 1) : floorNode((long)k - 1);
+	}
+
+	private AVLTree.AVLNode floorNode(int k) {
+		return (this.descending) ? ceilingNode((long)k) : floorNode((long)k);
+	}
+
+	private AVLTree.AVLNode ceilingNode(int k) {
+		return (this.descending) ? floorNode((long)k) : ceilingNode((long)k);
+	}
+
+	private AVLTree.AVLNode higherNode(int k) {
+		return (this.descending) ? floorNode((long)k - 1) : ceilingNode((long)k + 1);
+	}
+
+	private AVLTree.AVLNode firstNode() {
+		return (this.descending) ? floorNode(this.hi) : ceilingNode(this.lo);
+	}
+
+	private AVLTree.AVLNode lastNode() {
+		return (this.descending) ? ceilingNode(this.lo) : floorNode(this.hi);
+	}
+
+	// The next node of the view after node, or null
+	// Time complexity  O(1) amortized
+	private AVLTree.AVLNode nextNode(AVLTree.AVLNode node) {
+		AVLTree.IAVLNode next = (this.descending) ? node.getPredecessor() : node.getSuccessor();
+		return (next == null || !inRange(next.getKey())) ? null : (AVLTree.AVLNode)next;
+	}
+
+	private static Map.Entry<Integer, String> entry(AVLTree.IAVLNode node) {
+		return (node == null) ? null : new AbstractMap.SimpleImmutableEntry<>(node.getKey(), node.getValue());
+	}
+
+	private static Integer key(AVLTree.IAVLNode node) {
+		return (node == null) ? null : node.getKey();
+	}
+
+	private static Integer keyOrThrow(AVLTree.IAVLNode node) {
+		if (node == null) {
+			throw new NoSuchElementException();
+		}
+		return node.getKey();
+	}
+
+	// Time complexity  O(logn)
+	public int size() {
+		if (isFullRange()) {
+			return this.tree.size();
+		}
+		if (this.lo > this.hi) {
+			return 0;
+		}
+		int below = (this.lo == Integer.MIN_VALUE) ? 0 : this.tree.rank((int)this.lo - 1);
+		return this.tree.rank((int)this.hi) - below;
+	}
+
+	// Time complexity  O(logn)
+	public boolean isEmpty() {
+		return firstNode() == null;
+	}
+
+	// Time complexity  O(logn)
+	public boolean containsKey(Object key) {
+		return nodeOf(key) != null;
+	}
+
+	// Time complexity  O(logn)
+	public String get(Object key) {
+		AVLTree.AVLNode node = nodeOf(key);
+		return (node == null) ? null : node.getValue();
+	}
+
+	// The node of key in the view, or null
+	private AVLTree.AVLNode nodeOf(Object key) {
+		if (!(key instanceof Integer) || !inRange((Integer)key)) {
+			if (key == null) {
+				throw new NullPointerException();
+			}
+			return null;
+		}
+		return this.tree.returnNode((Integer)key);
+	}
+
+	// Time complexity  O(logn)
+	public String put(Integer key, String value) {
+		return this.tree.put(checkedKey(key), value);
+	}
+
+	// Time complexity  O(logn)
+	public String remove(Object key) {
+		AVLTree.AVLNode node = nodeOf(key);
+		if (node == null) {
+			return null;
+		}
+		String previous = node.getValue();
+		this.tree.delete((Integer)key);
+		return previous;
+	}
+
+	// The keys of the view are cut out with AVLTree.deleteRange
+	// Time complexity  O(logn)
+	public void clear() {
+		if (this.lo > this.hi) {
+			return;
+		}
+		if (this.hi < Integer.MAX_VALUE) {
+			this.tree.deleteRange((int)this.lo, (int)this.hi + 1);
+			return;
+		}
+		this.tree.deleteRange((int)this.lo, Integer.MAX_VALUE);
+		this.tree.delete(Integer.MAX_VALUE);
+	}
+
+	public Comparator<? super Integer> comparator() {
+		return (this.descending) ? Collections.reverseOrder() : null;
+	}
+
+	public Integer firstKey() {
+		return keyOrThrow(firstNode());
+	}
+
+	public Integer lastKey() {
+		return keyOrThrow(lastNode());
+	}
+
+	public Map.Entry<Integer, String> firstEntry() {
+		return entry(firstNode());
+	}
+
+	public Map.Entry<Integer, String> lastEntry() {
+		return entry(lastNode());
+	}
+
+	public Map.Entry<Integer, String> pollFirstEntry() {
+		Map.Entry<Integer, String> first = firstEntry();
+		if (first != null) {
+			this.tree.delete(first.getKey());
+		}
+		return first;
+	}
+
+	public Map.Entry<Integer, String> pollLastEntry() {
+		Map.Entry<Integer, String> last = lastEntry();
+		if (last != null) {
+			this.tree.delete(last.getKey());
+		}
+		return last;
+	}
+
+	public Map.Entry<Integer, String> lowerEntry(Integer key) {
+		return entry(lowerNode((int)key));
+	}
+
+	public Integer lowerKey(Integer key) {
+		return key(lowerNode((int)key));
+	}
+
+	public Map.Entry<Integer, String> floorEntry(Integer key) {
+		return entry(floorNode((int)key));
+	}
+
+	public Integer floorKey(Integer key) {
+		return key(floorNode((int)key));
+	}
+
+	public Map.Entry<Integer, String> ceilingEntry(Integer key) {
+		return entry(ceilingNode((int)key));
+	}
+
+	public Integer ceilingKey(Integer key) {
+		return key(ceilingNode((int)key));
+	}
+
+	public Map.Entry<Integer, String> higherEntry(Integer key) {
+		return entry(higherNode((int)key));
+	}
+
+	public Integer higherKey(Integer key) {
+		return key(higherNode((int)key));
+	}
+
+	public NavigableMap<Integer, String> descendingMap() {
+		return new AVLTreeMap(this.tree, this.lo, this.hi, !this.descending);
+	}
+
+	// The view of the keys between from and to in the order of this view
+	// Time complexity  O(1)
+	private AVLTreeMap subView(long from, boolean fromInclusive, long to, boolean toInclusive) {
+		long first = (fromInclusive) ? from : ((this.descending) ? from - 1 : from + 1);
+		long last = (toInclusive) ? to : ((this.descending) ? to + 1 : to - 1);
+		long newLo = Math.max(this.lo, (this.descending) ? last : first);
+		long newHi = Math.min(this.hi, (this.descending) ? first : last);
+		return new AVLTreeMap(this.tree, newLo, newHi, this.descending);
+	}
+
+	// An inclusive bound of a sub view must be a key of this view, an exclusive one may also be next to it
+	private void checkBound(long k, boolean inclusive) {
+		if ((inclusive) ? !inRange(k) : k < this.lo - 1 || k > this.hi + 1) {
+			throw new IllegalArgumentException("bound out of range: " + k);
+		}
+	}
+
+	public NavigableMap<Integer, String> subMap(Integer fromKey, boolean fromInclusive, Integer toKey, boolean toInclusive) {
+		if ((this.descending) ? fromKey < toKey : fromKey > toKey) {
+			throw new IllegalArgumentException("fromKey > toKey");
+		}
+		checkBound(fromKey, fromInclusive);
+		checkBound(toKey, toInclusive);
+		return subView(fromKey, fromInclusive, toKey, toInclusive);
+	}
+
+	public NavigableMap<Integer, String> headMap(Integer toKey, boolean inclusive) {
+		checkBound(toKey, inclusive);
+		return subView((this.descending) ? this.hi : this.lo, true, toKey, inclusive);
+	}
+
+	public NavigableMap<Integer, String> tailMap(Integer fromKey, boolean inclusive) {
+		checkBound(fromKey, inclusive);
+		return subView(fromKey, inclusive, (this.descending) ? this.lo : this.hi, true);
+	}
+
+	public SortedMap<Integer, String> subMap(Integer fromKey, Integer toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	public SortedMap<Integer, String> headMap(Integer toKey) {
+		return headMap(toKey, false);
+	}
+
+	public SortedMap<Integer, String> tailMap(Integer fromKey) {
+		return tailMap(fromKey, true);
+	}
+
+	public Set<Integer> keySet() {
+		return navigableKeySet();
+	}
+
+	public NavigableSet<Integer> navigableKeySet() {
+		return new KeySet(this);
+	}
+
+	public NavigableSet<Integer> descendingKeySet() {
+		return new KeySet((AVLTreeMap)descendingMap());
+	}
+
+	public Set<Map.Entry<Integer, String>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, String>>() {
+			public Iterator<Map.Entry<Integer, String>> iterator() {
+				return new EntryIterator(firstNode());
+			}
+
+			public int size() {
+				return AVLTreeMap.this.size();
+			}
+
+			public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry)) {
+					return false;
+				}
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>)o;
+				AVLTree.AVLNode node = (e.getKey() instanceof Integer) ? nodeOf(e.getKey()) : null;
+				return node != null && Objects.equals(node.getValue(), e.getValue());
+			}
+
+			public boolean remove(Object o) {
+				if (!contains(o)) {
+					return false;
+				}
+				AVLTreeMap.this.remove(((Map.Entry<?, ?>)o).getKey());
+				return true;
+			}
+
+			public void clear() {
+				AVLTreeMap.this.clear();
+			}
+		};
+	}
+
+	/**
+	 * private class EntryIterator
+	 *
+	 * Walks the nodes of the view by successor (or predecessor) links.
+	 * After a remove the next node is found again by its key, since delete
+	 * may move keys between nodes.
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<Integer, String>> {
+
+		private AVLTree.AVLNode next;
+		private int lastKey;
+		private boolean canRemove;
+
+		private EntryIterator(AVLTree.AVLNode first) {
+			this.next = first;
+		}
+
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		public Map.Entry<Integer, String> next() {
+			if (this.next == null) {
+				throw new NoSuchElementException();
+			}
+			AVLTree.AVLNode node = this.next;
+			this.lastKey = node.getKey();
+			this.canRemove = true;
+			this.next = nextNode(node);
+			return entry(node);
+		}
+
+		public void remove() {
+			if (!this.canRemove) {
+				throw new IllegalStateException();
+			}
+			this.canRemove = false;
+			Integer nextKey = key(this.next);
+			AVLTreeMap.this.tree.delete(this.lastKey);
+			this.next = (nextKey == null) ? null : AVLTreeMap.this.tree.returnNode(nextKey);
+		}
+	}
+
+	/**
+	 * private static class KeySet
+	 *
+	 * The keys of a view as a NavigableSet, every method is the one of the view.
+	 */
+	private static class KeySet extends AbstractSet<Integer> implements NavigableSet<Integer> {
+
+		private final AVLTreeMap map;
+
+		private KeySet(AVLTreeMap map) {
+			this.map = map;
+		}
+
+		public Iterator<Integer> iterator() {
+			Iterator<Map.Entry<Integer, String>> entries = this.map.entrySet().iterator();
+			return new Iterator<Integer>() {
+				public boolean hasNext() {
+					return entries.hasNext();
+				}
+
+				public Integer next() {
+					return entries.next().getKey();
+				}
+
+				public void remove() {
+					entries.remove();
+				}
+			};
+		}
+
+		public int size() {
+			return this.map.size();
+		}
+
+		public boolean isEmpty() {
+			return this.map.isEmpty();
+		}
+
+		public boolean contains(Object o) {
+			return this.map.containsKey(o);
+		}
+
+		public boolean remove(Object o) {
+			if (!this.map.containsKey(o)) {
+				return false;
+			}
+			this.map.remove(o);
+			return true;
+		}
+
+		public void clear() {
+			this.map.clear();
+		}
+
+		public Comparator<? super Integer> comparator() {
+			return this.map.comparator();
+		}
+
+		public Integer first() {
+			return this.map.firstKey();
+		}
+
+		public Integer last() {
+			return this.map.lastKey();
+		}
+
+		public Integer lower(Integer e) {
+			return this.map.lowerKey(e);
+		}
+
+		public Integer floor(Integer e) {
+			return this.map.floorKey(e);
+		}
+
+		public Integer ceiling(Integer e) {
+			return this.map.ceilingKey(e);
+		}
+
+		public Integer higher(Integer e) {
+			return this.map.higherKey(e);
+		}
+
+		public Integer pollFirst() {
+			Map.Entry<Integer, String> e = this.map.pollFirstEntry();
+			return (e == null) ? null : e.getKey();
+		}
+
+		public Integer pollLast() {
+			Map.Entry<Integer, String> e = this.map.pollLastEntry();
+			return (e == null) ? null : e.getKey();
+		}
+
+		public NavigableSet<Integer> descendingSet() {
+			return this.map.descendingKeySet();
+		}
+
+		public Iterator<Integer> descendingIterator() {
+			return descendingSet().iterator();
+		}
+
+		public NavigableSet<Integer> subSet(Integer fromElement, boolean fromInclusive, Integer toElement, boolean toInclusive) {
+			return this.map.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+		}
+
+		public NavigableSet<Integer> headSet(Integer toElement, boolean inclusive) {
+			return this.map.headMap(toElement, inclusive).navigableKeySet();
+		}
+
+		public NavigableSet<Integer> tailSet(Integer fromElement, boolean inclusive) {
+			return this.map.tailMap(fromElement, inclusive).navigableKeySet();
+		}
+
+		public SortedSet<Integer> subSet(Integer fromElement, Integer toElement) {
+			return subSet(fromElement, true, toElement, false);
+		}
+
+		public SortedSet<Integer> headSet(Integer toElement) {
+			return headSet(toElement, false);
+		}
+
+		public SortedSet<Integer> tailSet(Integer fromElement) {
+			return tailSet(fromElement, true);
+		}
+	}
+}
@@ -0,0 +1,751 @@
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ *
+ * BPlusIntTree
+ *
+ * A B+ tree with distinct integer keys and info, with the same operations as AVLTree.
+ *
+ * A node holds up to fanout keys (a leaf) or fanout sons (an inner node) in arrays,
+ * so a search reads one node per level, about log(n)/log(fanout) levels,
+ * and the keys of a node are scanned inside a few cache lines.
+ * The items are in the leaves, which are linked in key order for range scans.
+ * Every node other than the root has at least fanout/2 keys or sons,
+ * and every leaf is at the same depth (the height of the tree).
+ *
+ */
+
+public class BPlusIntTree {
+
+	private static final int DEFAULT_FANOUT = 64;
+
+	/**
+	 * private static class Node
+	 *
+	 * A leaf (keys and values) or an inner node (separator keys and sons).
+	 * The arrays have room for one more entry than fanout, which is split off right away.
+	 */
+	private static class Node {
+
+		private int count; // keys of a leaf, sons of an inner node
+		private int size; // items in the subtree
+		private final int[] keys; // of a leaf, or keys[j] separates sons[j] < keys[j] <= sons[j+1]
+		private final String[] values; // of a leaf, null for an inner node
+		private final Node[] sons; // of an inner node, null for a leaf
+		private Node next; // the next leaf, null for the last leaf and inner nodes
+
+		private Node(boolean leaf, int fanout) {
+			this.keys = new int[fanout + 1];
+			this.values = (leaf) ? new String[fanout + 1] : null;
+			this.sons = (leaf) ? null : new Node[fanout + 1];
+		}
+
+		private boolean isLeaf() {
+			return this.sons == null;
+		}
+
+		// Time complexity  O(fanout)
+		private void updateSize() {
+			if (isLeaf()) {
+				this.size = this.count;
+				return;
+			}
+			int s = 0;
+			for (int j = 0; j < this.count; j++) {
+				s += this.sons[j].size;
+			}
+			this.size = s;
+		}
+	}
+
+	private final int fanout; // most keys in a leaf and most sons of an inner node
+	private final int minFill; // fewest keys or sons in a node other than the root
+	private Node root; // null if the tree is empty
+	private int height; // leaves are at depth height
+
+	// Empty constructor to create an empty tree of DEFAULT_FANOUT
+	public BPlusIntTree() {
+		this(DEFAULT_FANOUT);
+	}
+
+  /**
+   * public BPlusIntTree(int fanout)
+   *
+   * Creates an empty tree whose nodes hold up to fanout keys or sons.
+   * A larger fanout makes the tree lower and the updates move more entries.
+   * precondition: fanout >= 4
+   */
+	public BPlusIntTree(int fanout) {
+		this.fanout = fanout;
+		this.minFill = fanout / 2;
+	}
+
+  /**
+   * public static BPlusIntTree fromSorted(int[] keys, String[] values, int fanout)
+   *
+   * Returns a tree of the items (keys[j], values[j]) loaded bottom up
+   * instead of by keys.length calls to insert. The leaves and then every level
+   * are filled as evenly as possible with up to fanout entries.
+   * precondition: keys is sorted in increasing order without duplicates,
+   * values.length == keys.length, fanout >= 4
+   */
+	// Time complexity  O(n)
+	public static BPlusIntTree fromSorted(int[] keys, String[] values, int fanout) {
+		BPlusIntTree tree = new BPlusIntTree(fanout);
+		int n = keys.length;
+		if (n == 0) {
+			return tree;
+		}
+		// The leaves, with the smallest key of every node for the separators above it
+		int count = (n + fanout - 1) / fanout;
+		Node[] level = new Node[count];
+		int[] firstKeys = new int[count];
+		Node previous = null;
+		for (int j = 0; j < count; j++) {
+			int lo = (int)((long)n * j / count);
+			int hi = (int)((long)n * (j + 1) / count);
+			Node leaf = new Node(true, fanout);
+			System.arraycopy(keys, lo, leaf.keys, 0, hi - lo);
+			System.arraycopy(values, lo, leaf.values, 0, hi - lo);
+			leaf.count = hi - lo;
+			leaf.size = hi - lo;
+			if (previous != null) {
+				previous.next = leaf;
+			}
+			previous = leaf;
+			level[j] = leaf;
+			firstKeys[j] = keys[lo];
+		}
+		while (count > 1) {
+			int parents = (count + fanout - 1) / fanout;
+			Node[] upper = new Node[parents];
+			int[] upperFirstKeys = new int[parents];
+			for (int j = 0; j < parents; j++) {
+				int lo = (int)((long)count * j / parents);
+				int hi = (int)((long)count * (j + 1) / parents);
+				Node node = new Node(false, fanout);
+				System.arraycopy(level, lo, node.sons, 0, hi - lo);
+				System.arraycopy(firstKeys, lo + 1, node.keys, 0, hi - lo - 1);
+				node.count = hi - lo;
+				node.updateSize();
+				upper[j] = node;
+				upperFirstKeys[j] = firstKeys[lo];
+			}
+			level = upper;
+			firstKeys = upperFirstKeys;
+			count = parents;
+			tree.height++;
+		}
+		tree.root = level[0];
+		return tree;
+	}
+
+	// A helping function to make a tree of a node of height h, with the fanout of this tree
+	// Time complexity  O(1)
+	private BPlusIntTree subTree(Node node, int h) {
+		BPlusIntTree tree = new BPlusIntTree(this.fanout);
+		tree.root = node;
+		tree.height = (node == null) ? 0 : h;
+		return tree;
+	}
+
+  /**
+   * public boolean empty()
+   *
+   * returns true if and only if the tree is empty
+   *
+   */
+	// Time complexity  O(1)
+	public boolean empty() {
+		return this.root == null;
+	}
+
+   /**
+    * public int size()
+    *
+    * Returns the number of items in the tree.
+    */
+	// Time complexity  O(1)
+	public int size() {
+		return (empty()) ? 0 : this.root.size;
+	}
+
+   /**
+    * public int getHeight()
+    *
+    * Returns the number of inner levels, 0 for an empty tree or a single leaf.
+    */
+	// Time complexity  O(1)
+	public int getHeight() {
+		return this.height;
+	}
+
+ /**
+   * public String search(int k)
+   *
+   * returns the info of an item with key k if it exists in the tree
+   * otherwise, returns null
+   */
+	// Time complexity  O(logn)
+	public String search(int k) {
+		Node node = this.root;
+		if (node == null) {
+			return null;
+		}
+		while (!node.isLeaf()) {
+			node = node.sons[sonIndex(node, k)];
+		}
+		int j = keyIndex(node, k);
+		return (j < node.count && node.keys[j] == k) ? node.values[j] : null;
+	}
+
+	// The index of the son of an inner node whose subtree holds k:
+	// the number of separators <= k
+	// Time complexity  O(log(fanout))
+	private static int sonIndex(Node node, int k) {
+		int lo = 0;
+		int hi = node.count - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (node.keys[mid] <= k) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	// The index of the first key >= k in a leaf (count if there is none)
+	// Time complexity  O(log(fanout))
+	private static int keyIndex(Node leaf, int k) {
+		int lo = 0;
+		int hi = leaf.count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (leaf.keys[mid] < k) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+  /**
+   * public int insert(int k, String i)
+   *
+   * inserts an item with key k and info i to the tree.
+   * the tree must remain valid (keep its invariants).
+   * returns the number of rebalancing operations (node splits), or 0 if none were necessary.
+   * returns -1 if an item with key k already exists in the tree.
+   */
+	// Time complexity  O(logn)
+	public int insert(int k, String i) {
+		if (empty()) {
+			this.root = new Node(true, this.fanout);
+			this.height = 0;
+			this.root.keys[0] = k;
+			this.root.values[0] = i;
+			this.root.count = 1;
+			this.root.size = 1;
+			return 0;
+		}
+		Node[] path = new Node[this.height];
+		int[] index = new int[this.height];
+		Node leaf = descend(k, path, index);
+		int j = keyIndex(leaf, k);
+		if (j < leaf.count && leaf.keys[j] == k) {
+			return -1;
+		}
+		System.arraycopy(leaf.keys, j, leaf.keys, j + 1, leaf.count - j);
+		System.arraycopy(leaf.values, j, leaf.values, j + 1, leaf.count - j);
+		leaf.keys[j] = k;
+		leaf.values[j] = i;
+		leaf.count++;
+		leaf.size++;
+		for (Node node : path) {
+			node.size++;
+		}
+		return splitUp(path, index, this.height, leaf);
+	}
+
+	// A helping function to go down to the leaf of k,
+	// keeping the inner nodes and the indices of the sons taken
+	// Time complexity  O(logn)
+	private Node descend(int k, Node[] path, int[] index) {
+		Node node = this.root;
+		for (int d = 0; d < this.height; d++) {
+			path[d] = node;
+			index[d] = sonIndex(node, k);
+			node = node.sons[index[d]];
+		}
+		return node;
+	}
+
+	// A helping function to split node, at depth depth under path, while it has too many entries.
+	// Every split puts the new right node beside it in the parent, and the root splits into a new root.
+	// Returns the number of splits
+	// Time complexity  O(fanout * logn)
+	private int splitUp(Node[] path, int[] index, int depth, Node node) {
+		int res = 0;
+		while (node.count > this.fanout) {
+			int half = node.count / 2;
+			int separator = (node.isLeaf()) ? node.keys[half] : node.keys[half - 1];
+			Node right = splitNode(node, half);
+			res++;
+			if (depth == 0) {
+				Node top = new Node(false, this.fanout);
+				top.sons[0] = node;
+				top.sons[1] = right;
+				top.keys[0] = separator;
+				top.count = 2;
+				top.size = node.size + right.size;
+				this.root = top;
+				this.height++;
+				return res;
+			}
+			depth--;
+			insertSon(path[depth], index[depth] + 1, separator, right);
+			node = path[depth];
+		}
+		return res;
+	}
+
+	// A helping function to move the entries of node from half on to a new node, which is returned.
+	// The separator between them is keys[half] of a leaf or keys[half - 1] of an inner node
+	// Time complexity  O(fanout)
+	private Node splitNode(Node node, int half) {
+		Node right = new Node(node.isLeaf(), this.fanout);
+		int moved = node.count - half;
+		if (node.isLeaf()) {
+			System.arraycopy(node.keys, half, right.keys, 0, moved);
+			System.arraycopy(node.values, half, right.values, 0, moved);
+			Arrays.fill(node.values, half, node.count, null);
+			right.next = node.next;
+			node.next = right;
+		}
+		else {
+			System.arraycopy(node.sons, half, right.sons, 0, moved);
+			System.arraycopy(node.keys, half, right.keys, 0, moved - 1);
+			Arrays.fill(node.sons, half, node.count, null);
+		}
+		right.count = moved;
+		node.count = half;
+		right.updateSize();
+		node.size -= right.size;
+		return right;
+	}
+
+	// A helping function to put son at index j of parent. The separator goes before son,
+	// or after it if j == 0 (it is then the smallest key of the old first son)
+	// Time complexity  O(fanout)
+	private static void insertSon(Node parent, int j, int separator, Node son) {
+		int keyIndex = Math.max(j - 1, 0);
+		System.arraycopy(parent.sons, j, parent.sons, j + 1, parent.count - j);
+		System.arraycopy(parent.keys, keyIndex, parent.keys, keyIndex + 1, parent.count - 1 - keyIndex);
+		parent.sons[j] = son;
+		parent.keys[keyIndex] = separator;
+		parent.count++;
+	}
+
+  /**
+   * public int delete(int k)
+   *
+   * deletes an item with key k from the tree, if it is there;
+   * the tree must remain valid (keep its invariants).
+   * returns the number of rebalancing operations (merges and moves of entries between
+   * neighbour nodes), or 0 if none were needed.
+   * returns -1 if an item with key k was not found in the tree.
+   */
+	// Time complexity  O(logn)
+	public int delete(int k) {
+		if (empty()) {
+			return -1;
+		}
+		Node[] path = new Node[this.height];
+		int[] index = new int[this.height];
+		Node leaf = descend(k, path, index);
+		int j = keyIndex(leaf, k);
+		if (j == leaf.count || leaf.keys[j] != k) {
+			return -1;
+		}
+		System.arraycopy(leaf.keys, j + 1, leaf.keys, j, leaf.count - j - 1);
+		System.arraycopy(leaf.values, j + 1, leaf.values, j, leaf.count - j - 1);
+		leaf.count--;
+		leaf.size--;
+		leaf.values[leaf.count] = null;
+		for (Node node : path) {
+			node.size--;
+		}
+		if (leaf.count == 0) { // only the root leaf may become empty
+			this.root = null;
+			return 0;
+		}
+		// Fix the underfull nodes up the path. The separators of deleted keys may stay,
+		// they still separate the sons
+		int res = 0;
+		for (int d = this.height - 1; d >= 0; d--) {
+			if (path[d].sons[index[d]].count >= this.minFill) {
+				break;
+			}
+			res += fixPair(path[d], Math.max(index[d] - 1, 0));
+		}
+		if (!this.root.isLeaf() && this.root.count == 1) {
+			this.root = this.root.sons[0];
+			this.height--;
+		}
+		return res;
+	}
+
+	// A helping function for the neighbour sons a and a + 1 of parent, of which one may be underfull:
+	// they are merged if their entries fit in one node, otherwise the entries are shared evenly.
+	// Returns the number of rebalancing operations
+	// Time complexity  O(fanout)
+	private int fixPair(Node parent, int a) {
+		Node left = parent.sons[a];
+		Node right = parent.sons[a + 1];
+		if (left.count >= this.minFill && right.count >= this.minFill) {
+			return 0;
+		}
+		if (left.count + right.count <= this.fanout) {
+			merge(parent, a);
+		}
+		else {
+			redistribute(parent, a);
+		}
+		return 1;
+	}
+
+	// A helping function to move son a + 1 of parent into son a, and to remove it from parent
+	// Time complexity  O(fanout)
+	private static void merge(Node parent, int a) {
+		Node left = parent.sons[a];
+		Node right = parent.sons[a + 1];
+		if (left.isLeaf()) {
+			System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+			System.arraycopy(right.values, 0, left.values, left.count, right.count);
+			left.next = right.next;
+		}
+		else {
+			left.keys[left.count - 1] = parent.keys[a];
+			System.arraycopy(right.keys, 0, left.keys, left.count, right.count - 1);
+			System.arraycopy(right.sons, 0, left.sons, left.count, right.count);
+		}
+		left.count += right.count;
+		left.size += right.size;
+		System.arraycopy(parent.keys, a + 1, parent.keys, a, parent.count - a - 2);
+		System.arraycopy(parent.sons, a + 2, parent.sons, a + 1, parent.count - a - 2);
+		parent.count--;
+		parent.sons[parent.count] = null;
+	}
+
+	// A helping function to share the entries of sons a and a + 1 of parent evenly.
+	// For inner nodes the separator in parent moves with them, as in a rotation
+	// Time complexity  O(fanout)
+	private static void redistribute(Node parent, int a) {
+		Node left = parent.sons[a];
+		Node right = parent.sons[a + 1];
+		int total = left.count + right.count;
+		int half = total / 2;
+		if (left.isLeaf()) {
+			int[] keys = new int[total];
+			String[] values = new String[total];
+			System.arraycopy(left.keys, 0, keys, 0, left.count);
+			System.arraycopy(right.keys, 0, keys, left.count, right.count);
+			System.arraycopy(left.values, 0, values, 0, left.count);
+			System.arraycopy(right.values, 0, values, left.count, right.count);
+			Arrays.fill(left.values, null);
+			Arrays.fill(right.values, null);
+			System.arraycopy(keys, 0, left.keys, 0, half);
+			System.arraycopy(values, 0, left.values, 0, half);
+			System.arraycopy(keys, half, right.keys, 0, total - half);
+			System.arraycopy(values, half, right.values, 0, total - half);
+			parent.keys[a] = keys[half];
+		}
+		else {
+			int[] keys = new int[total - 1];
+			Node[] sons = new Node[total];
+			System.arraycopy(left.keys, 0, keys, 0, left.count - 1);
+			keys[left.count - 1] = parent.keys[a];
+			System.arraycopy(right.keys, 0, keys, left.count, right.count - 1);
+			System.arraycopy(left.sons, 0, sons, 0, left.count);
+			System.arraycopy(right.sons, 0, sons, left.count, right.count);
+			Arrays.fill(left.sons, null);
+			Arrays.fill(right.sons, null);
+			System.arraycopy(keys, 0, left.keys, 0, half - 1);
+			System.arraycopy(sons, 0, left.sons, 0, half);
+			parent.keys[a] = keys[half - 1];
+			System.arraycopy(keys, half, right.keys, 0, total - half - 1);
+			System.arraycopy(sons, half, right.sons, 0, total - half);
+		}
+		left.count = half;
+		right.count = total - half;
+		left.updateSize();
+		right.updateSize();
+	}
+
+   /**
+    * public String min()
+    *
+    * Returns the info of the item with the smallest key in the tree,
+    * or null if the tree is empty
+    */
+	// Time complexity  O(logn)
+	public String min() {
+		return (empty()) ? null : firstLeaf().values[0];
+	}
+
+   /**
+    * public String max()
+    *
+    * Returns the info of the item with the largest key in the tree,
+    * or null if the tree is empty
+    */
+	// Time complexity  O(logn)
+	public String max() {
+		if (empty()) {
+			return null;
+		}
+		Node leaf = lastLeaf();
+		return leaf.values[leaf.count - 1];
+	}
+
+	// Time complexity  O(logn)
+	private Node firstLeaf() {
+		Node node = this.root;
+		while (!node.isLeaf()) {
+			node = node.sons[0];
+		}
+		return node;
+	}
+
+	// Time complexity  O(logn)
+	private Node lastLeaf() {
+		Node node = this.root;
+		while (!node.isLeaf()) {
+			node = node.sons[node.count - 1];
+		}
+		return node;
+	}
+
+  /**
+   * public int[] keysToArray()
+   *
+   * Returns a sorted array which contains all keys in the tree,
+   * or an empty array if the tree is empty.
+   */
+	// Time complexity  O(n)
+	public int[] keysToArray() {
+		int[] keysArray = new int[size()];
+		int i = 0;
+		for (Node leaf = (empty()) ? null : firstLeaf(); leaf != null; leaf = leaf.next) {
+			System.arraycopy(leaf.keys, 0, keysArray, i, leaf.count);
+			i += leaf.count;
+		}
+		return keysArray;
+	}
+
+  /**
+   * public String[] infoToArray()
+   *
+   * Returns an array which contains all info in the tree,
+   * sorted by their respective keys,
+   * or an empty array if the tree is empty.
+   */
+	// Time complexity  O(n)
+	public String[] infoToArray() {
+		String[] stringArray = new String[size()];
+		int i = 0;
+		for (Node leaf = (empty()) ? null : firstLeaf(); leaf != null; leaf = leaf.next) {
+			System.arraycopy(leaf.values, 0, stringArray, i, leaf.count);
+			i += leaf.count;
+		}
+		return stringArray;
+	}
+
+  /**
+   * public void forEachInRange(int lo, int hi, BiConsumer<Integer, String> action)
+   *
+   * Runs action on every item with lo <= key < hi in increasing key order.
+   * One descent finds the first item, then the scan follows the leaf links.
+   */
+	// Time complexity  O(logn + number of items in the range)
+	public void forEachInRange(int lo, int hi, BiConsumer<Integer, String> action) {
+		if (empty() || lo >= hi) {
+			return;
+		}
+		Node leaf = this.root;
+		while (!leaf.isLeaf()) {
+			leaf = leaf.sons[sonIndex(leaf, lo)];
+		}
+		for (int j = keyIndex(leaf, lo); leaf != null; leaf = leaf.next, j = 0) {
+			for (; j < leaf.count; j++) {
+				if (leaf.keys[j] >= hi) {
+					return;
+				}
+				action.accept(leaf.keys[j], leaf.values[j]);
+			}
+		}
+	}
+
+     /**
+    * public BPlusIntTree[] split(int x)
+    *
+    * splits the tree into 2 trees according to the key x.
+    * Returns an array [t1, t2] with two trees. keys(t1) < x < keys(t2).
+    * The path to x cuts every node on it in two; the parts left of the path are joined
+    * from the lowest up into t1, and the parts right of it into t2.
+    * The two trees use the nodes of this tree, which becomes empty.
+    * x does not have to be in the tree, and the tree might be empty.
+	  * precondition: none
+    * postcondition: none
+    */
+	// Time complexity  O(fanout * logn)
+	public BPlusIntTree[] split(int x) {
+		BPlusIntTree t1 = subTree(null, 0);
+		BPlusIntTree t2 = subTree(null, 0);
+		if (empty()) {
+			return new BPlusIntTree[]{t1, t2};
+		}
+		BPlusIntTree[] lowParts = new BPlusIntTree[this.height + 1];
+		BPlusIntTree[] highParts = new BPlusIntTree[this.height + 1];
+		Node node = this.root;
+		for (int h = this.height; h > 0; h--) {
+			int j = sonIndex(node, x);
+			Node next = node.sons[j];
+			highParts[h] = innerPart(node, j + 1, node.count, h);
+			lowParts[h] = innerPart(node, 0, j, h);
+			node = next;
+		}
+		// The leaf of x
+		int j = keyIndex(node, x);
+		int from = (j < node.count && node.keys[j] == x) ? j + 1 : j;
+		Node right = (from < node.count) ? splitNode(node, from) : null;
+		Arrays.fill(node.values, j, node.count, null);
+		node.count = j;
+		node.size = j;
+		node.next = null;
+		lowParts[0] = subTree((j > 0) ? node : null, 0);
+		highParts[0] = subTree(right, 0);
+
+		// Join the parts from the lowest, so every join costs the difference of the heights
+		for (int h = 0; h <= this.height; h++) {
+			t1 = concat(lowParts[h], t1);
+			t2 = concat(t2, highParts[h]);
+		}
+		if (!t1.empty()) {
+			t1.lastLeaf().next = null; // it led to the leaf of x or to t2
+		}
+		this.root = null;
+		this.height = 0;
+		return new BPlusIntTree[]{t1, t2};
+	}
+
+	// A helping function to make a tree of the sons [from, to) of an inner node of height h.
+	// The parts of one node are made from the right, so the node itself is reused for [0, to)
+	// Time complexity  O(fanout)
+	private BPlusIntTree innerPart(Node node, int from, int to, int h) {
+		if (from >= to) {
+			return subTree(null, 0);
+		}
+		if (to - from == 1) {
+			return subTree(node.sons[from], h - 1);
+		}
+		Node part = node;
+		if (from > 0) {
+			part = new Node(false, this.fanout);
+			System.arraycopy(node.sons, from, part.sons, 0, to - from);
+			System.arraycopy(node.keys, from, part.keys, 0, to - from - 1);
+		}
+		else {
+			Arrays.fill(node.sons, to, node.count, null);
+		}
+		part.count = to - from;
+		part.updateSize();
+		return subTree(part, h);
+	}
+
+   /**
+    * public int join(int k, String i, BPlusIntTree t)
+    *
+    * joins t and a new item with key k and info i with the tree.
+    * The lower tree is put under the spine of the higher one at its own height,
+    * and the nodes that overflow are split up to the root.
+    * If t has another fanout its items are copied in first.
+    * Returns the complexity of the operation (|tree.height - t.height| + 1).
+	  * precondition: keys(k,t) < keys() or keys(k,t) > keys(). t/tree might be empty.
+    * postcondition: none
+    */
+	// Time complexity  O(fanout * logn), O(|t|) when t has another fanout
+	public int join(int k, String i, BPlusIntTree t) {
+		if (t.fanout != this.fanout) {
+			BPlusIntTree copy = fromSorted(t.keysToArray(), t.infoToArray(), this.fanout);
+			t.root = null;
+			t.height = 0;
+			t = copy;
+		}
+		int res = Math.abs(t.height - this.height) + 1;
+		boolean tIsHigher = (!t.empty()) ? t.firstLeaf().keys[0] > k : (!empty() && firstLeaf().keys[0] < k);
+		BPlusIntTree joined = (tIsHigher) ? concat(this, t) : concat(t, this);
+		this.root = joined.root;
+		this.height = joined.height;
+		t.root = null;
+		t.height = 0;
+		insert(k, i);
+		return res;
+	}
+
+	// A helping function to join the trees low and high, keys(low) < keys(high), of the same fanout.
+	// Returns the tree holding the result, and the other one must not be used afterwards
+	// Time complexity  O(fanout * (|low.height - high.height| + 1))
+	private static BPlusIntTree concat(BPlusIntTree low, BPlusIntTree high) {
+		if (high.empty()) {
+			return low;
+		}
+		if (low.empty()) {
+			return high;
+		}
+		Node firstHigh = high.firstLeaf();
+		low.lastLeaf().next = firstHigh;
+		int separator = firstHigh.keys[0];
+		if (low.height == high.height) {
+			Node top = new Node(false, low.fanout);
+			top.sons[0] = low.root;
+			top.sons[1] = high.root;
+			top.keys[0] = separator;
+			top.count = 2;
+			top.size = low.root.size + high.root.size;
+			low.root = top;
+			low.height++;
+			low.fixPair(top, 0);
+			if (top.count == 1) {
+				low.root = top.sons[0];
+				low.height--;
+			}
+			return low;
+		}
+		// The lower root goes under the spine of the higher tree, beside the node of its height
+		BPlusIntTree higher = (low.height > high.height) ? low : high;
+		Node lowerRoot = (higher == low) ? high.root : low.root;
+		boolean onRight = higher == low;
+		int depth = Math.abs(low.height - high.height) - 1;
+		Node[] path = new Node[depth];
+		int[] index = new int[depth];
+		Node node = higher.root;
+		for (int d = 0; d < depth; d++) {
+			path[d] = node;
+			index[d] = (onRight) ? node.count - 1 : 0;
+			node.size += lowerRoot.size;
+			node = node.sons[index[d]];
+		}
+		node.size += lowerRoot.size;
+		insertSon(node, (onRight) ? node.count : 0, separator, lowerRoot);
+		higher.fixPair(node, (onRight) ? node.count - 2 : 0);
+		higher.splitUp(path, index, depth, node);
+		return higher;
+	}
+}
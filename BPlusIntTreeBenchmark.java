@@ -0,0 +1,134 @@
+import java.util.Random;
+
+/**
+ *
+ * BPlusIntTreeBenchmark
+ *
+ * The shared benchmark of the search engines: AVLTree, IntAVLTree, FrozenAVLTree
+ * and BPlusIntTree with fanouts 16, 64 and 128.
+ * Every engine gets the same even keys, then the same uniform random lookups
+ * (half of them miss), then inserts of new odd keys followed by deletes of them.
+ * FrozenAVLTree is read only, so it runs the lookups only.
+ *
+ * Usage: java BPlusIntTreeBenchmark [keys] [lookups] [updates]
+ * Prints the average time of a lookup and of an insert plus its delete in nanoseconds.
+ *
+ */
+
+public class BPlusIntTreeBenchmark {
+
+	private static final int ROUNDS = 3; // the best of the rounds is printed, the first warms up the JIT
+
+	/**
+	 * private interface Engine
+	 *
+	 * The lookup of a tree under test.
+	 */
+	private interface Engine {
+		String search(int k);
+	}
+
+	/**
+	 * private interface Updates
+	 *
+	 * The updates of a tree under test, null for a read only engine.
+	 */
+	private interface Updates {
+		void insert(int k, String i);
+		void delete(int k);
+	}
+
+	public static void main(String[] args) {
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 4_000_000;
+		int lookups = (args.length > 1) ? Integer.parseInt(args[1]) : 2_000_000;
+		int updates = (args.length > 2) ? Integer.parseInt(args[2]) : 1_000_000;
+		int[] keys = new int[n];
+		String[] values = new String[n];
+		for (int j = 0; j < n; j++) {
+			keys[j] = 2 * j;
+			values[j] = "info";
+		}
+		Random random = new Random(42);
+		int[] lookupKeys = new int[lookups];
+		for (int j = 0; j < lookups; j++) {
+			lookupKeys[j] = random.nextInt(2 * n);
+		}
+		int[] newKeys = new int[updates];
+		for (int j = 0; j < updates; j++) {
+			newKeys[j] = 2 * random.nextInt(n) + 1;
+		}
+
+		System.out.printf("%d keys, %d lookups, %d inserts and deletes%n", n, lookups, updates);
+		System.out.printf("%-20s %12s %16s%n", "engine", "search", "insert+delete");
+
+		AVLTree avl = AVLTree.fromSorted(keys, values);
+		report("AVLTree", avl::search, new Updates() {
+			public void insert(int k, String i) {
+				avl.insert(k, i);
+			}
+
+			public void delete(int k) {
+				avl.delete(k);
+			}
+		}, lookupKeys, newKeys);
+
+		IntAVLTree intAvl = new IntAVLTree(n);
+		for (int j = 0; j < n; j++) {
+			intAvl.insert(keys[j], values[j]);
+		}
+		report("IntAVLTree", intAvl::search, new Updates() {
+			public void insert(int k, String i) {
+				intAvl.insert(k, i);
+			}
+
+			public void delete(int k) {
+				intAvl.delete(k);
+			}
+		}, lookupKeys, newKeys);
+
+		FrozenAVLTree frozen = avl.freeze();
+		report("FrozenAVLTree", frozen::search, null, lookupKeys, newKeys);
+
+		for (int fanout : new int[]{16, 64, 128}) {
+			BPlusIntTree bPlus = BPlusIntTree.fromSorted(keys, values, fanout);
+			report("BPlusIntTree(" + fanout + ")", bPlus::search, new Updates() {
+				public void insert(int k, String i) {
+					bPlus.insert(k, i);
+				}
+
+				public void delete(int k) {
+					bPlus.delete(k);
+				}
+			}, lookupKeys, newKeys);
+		}
+	}
+
+	// Time the lookups and the updates on one engine and print the best round of each
+	private static void report(String name, Engine engine, Updates updates, int[] lookupKeys, int[] newKeys) {
+		double bestSearch = Double.MAX_VALUE;
+		double bestUpdate = Double.MAX_VALUE;
+		int found = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long begin = System.nanoTime();
+			for (int k : lookupKeys) {
+				if (engine.search(k) != null) {
+					found++;
+				}
+			}
+			bestSearch = Math.min(bestSearch, (double)(System.nanoTime() - begin) / lookupKeys.length);
+			if (updates != null) {
+				begin = System.nanoTime();
+				for (int k : newKeys) {
+					updates.insert(k, "info");
+				}
+				for (int k : newKeys) {
+					updates.delete(k);
+				}
+				bestUpdate = Math.min(bestUpdate, (double)(System.nanoTime() - begin) / newKeys.length);
+			}
+		}
+		String update = (updates == null) ? "-" : String.format("%.0f ns", bestUpdate);
+		// found is printed so the lookups cannot be optimized away
+		System.out.printf("%-20s %9.0f ns %16s   (%d hits)%n", name, bestSearch, update, found / ROUNDS);
+	}
+}
@@ -0,0 +1,767 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ *
+ * ConcurrentAVLTree
+ *
+ * An AVL Tree with distinct integer keys and info which can be shared by threads.
+ *
+ * Reads (search, min, max, forEachInRange) take no lock. They walk down hand over hand
+ * and validate the version of every node they pass: a node's version changes when
+ * keys leave its subtree (it is rotated down) or when it is unlinked, and a reader
+ * that sees a changed version retries from the parent.
+ * Writers walk down the same way and lock only the nodes they change, from the top down:
+ * the parent of a new leaf, the parent and the node of an unlink, and for a rotation the
+ * parent, the node, its son and maybe a grandson. Writers in different subtrees run in
+ * parallel, and reads never wait for a lock.
+ *
+ * A deleted node with two sons stays in the tree as a routing node (info null)
+ * until it has at most one son, then it is unlinked. Nodes never change their keys.
+ *
+ */
+
+public class ConcurrentAVLTree {
+
+	private static final long UNLINKED = 1L; // version of a node which is not in the tree
+	private static final long SHRINKING = 2L; // set while keys move out of the subtree
+	private static final long SHRINK_COUNT = 4L; // added to the version after every change
+	private static final int SPINS = 100; // spins before yielding while a node is changing
+
+	// Results of nodeCondition besides a new height, which is never below -1
+	private static final int NOTHING_REQUIRED = -2;
+	private static final int UNLINK_REQUIRED = -3;
+	private static final int REBALANCE_REQUIRED = -4;
+
+	private static final Object RETRY = new Object(); // returned by a read or a write to retry at the parent
+	private static final Object NONE = new Object(); // returned by a read which found nothing
+
+	/**
+	 * private static class Node
+	 *
+	 * left, right, info and version are volatile for the readers. parent and height
+	 * are changed by writers holding locks. Other writers read them without a lock
+	 * and check them again after locking.
+	 */
+	private static class Node {
+
+		private final int key;
+		private volatile String value; // null for a routing node
+		private volatile Node left;
+		private volatile Node right;
+		private volatile long version;
+		private volatile Node parent;
+		private volatile int height;
+
+		private Node(int key, String value, Node parent) {
+			this.key = key;
+			this.value = value;
+			this.parent = parent;
+		}
+
+		private Node child(boolean goLeft) {
+			return (goLeft) ? this.left : this.right;
+		}
+	}
+
+	// The root is the right son of holder, whose version never changes
+	private final Node holder = new Node(Integer.MIN_VALUE, null, null);
+	private final AtomicInteger size = new AtomicInteger();
+
+  /**
+   * public boolean empty()
+   *
+   * returns true if and only if the tree is empty
+   */
+	// Time complexity  O(1)
+	public boolean empty() {
+		return this.size.get() == 0;
+	}
+
+   /**
+    * public int size()
+    *
+    * Returns the number of items in the tree.
+    */
+	// Time complexity  O(1)
+	public int size() {
+		return this.size.get();
+	}
+
+ /**
+   * public String search(int k)
+   *
+   * returns the info of an item with key k if it exists in the tree
+   * otherwise, returns null. Takes no lock.
+   */
+	// Time complexity  O(logn) when there are no concurrent changes on the path
+	public String search(int k) {
+		while (true) {
+			Object res = attemptGet(k, this.holder, false, this.holder.version);
+			if (res != RETRY) {
+				return (String)res;
+			}
+		}
+	}
+
+	// Look for k in the subtree of node in direction goLeft, where nodeVersion is the version
+	// of node when we decided to go there. Returns the info, null, or RETRY if node changed
+	private Object attemptGet(int k, Node node, boolean goLeft, long nodeVersion) {
+		while (true) {
+			Node child = node.child(goLeft);
+			if (node.version != nodeVersion) {
+				return RETRY;
+			}
+			if (child == null) {
+				return null;
+			}
+			if (child.key == k) {
+				return child.value; // null if it was deleted
+			}
+			long childVersion = child.version;
+			if ((childVersion & SHRINKING) != 0) {
+				waitUntilChanged(child, childVersion);
+			}
+			else if (childVersion != UNLINKED && child == node.child(goLeft)) {
+				if (node.version != nodeVersion) {
+					return RETRY;
+				}
+				Object res = attemptGet(k, child, k < child.key, childVersion);
+				if (res != RETRY) {
+					return res;
+				}
+			}
+			// child changed, read it again
+		}
+	}
+
+   /**
+    * public String min()
+    *
+    * Returns the info of the item with the smallest key in the tree,
+    * or null if the tree is empty. Takes no lock.
+    */
+	// Time complexity  O(logn)
+	public String min() {
+		while (true) {
+			Node node = nearest(Integer.MIN_VALUE, true);
+			if (node == null) {
+				return null;
+			}
+			String value = node.value;
+			if (value != null) {
+				return value;
+			}
+			// deleted after we found it, look again
+		}
+	}
+
+   /**
+    * public String max()
+    *
+    * Returns the info of the item with the largest key in the tree,
+    * or null if the tree is empty. Takes no lock.
+    */
+	// Time complexity  O(logn)
+	public String max() {
+		while (true) {
+			Node node = nearest(Integer.MAX_VALUE, false);
+			if (node == null) {
+				return null;
+			}
+			String value = node.value;
+			if (value != null) {
+				return value;
+			}
+		}
+	}
+
+  /**
+   * public void forEachInRange(int lo, int hi, IntConsumer action)
+   *
+   * Runs action on every key with lo <= key < hi in increasing order. Takes no lock.
+   * Every key is found by its own lock free search, so the range is weakly consistent:
+   * a key inserted or deleted during the scan may be seen or not.
+   */
+	// Time complexity  O(logn) per key in the range
+	public void forEachInRange(int lo, int hi, IntConsumer action) {
+		if (lo >= hi) {
+			return;
+		}
+		Node node = nearest(lo, true);
+		while (node != null && node.key < hi) {
+			action.accept(node.key);
+			if (node.key == Integer.MAX_VALUE) {
+				return;
+			}
+			node = nearest(node.key + 1, true);
+		}
+	}
+
+	// Returns the node with the smallest key >= k (ceiling) or the largest key <= k (floor)
+	// which was in the tree during the search, or null if there is none
+	// Time complexity  O(logn)
+	private Node nearest(int k, boolean ceiling) {
+		while (true) {
+			Object res = attemptNearest(k, ceiling, this.holder, false, this.holder.version);
+			if (res != RETRY) {
+				return (res == NONE) ? null : (Node)res;
+			}
+		}
+	}
+
+	// Look for the ceiling (or floor) of k in the subtree of node in direction goLeft.
+	// Returns the node, NONE, or RETRY if node changed
+	private Object attemptNearest(int k, boolean ceiling, Node node, boolean goLeft, long nodeVersion) {
+		while (true) {
+			Node child = node.child(goLeft);
+			if (node.version != nodeVersion) {
+				return RETRY;
+			}
+			if (child == null) {
+				return NONE;
+			}
+			long childVersion = child.version;
+			if ((childVersion & SHRINKING) != 0) {
+				waitUntilChanged(child, childVersion);
+				continue;
+			}
+			if (childVersion == UNLINKED || child != node.child(goLeft)) {
+				continue;
+			}
+			if (node.version != nodeVersion) {
+				return RETRY;
+			}
+			// For the ceiling: the answer is in the left subtree, then child itself,
+			// then the right subtree (the floor is the mirror image)
+			boolean childCanAnswer = (ceiling) ? k <= child.key : k >= child.key;
+			Object res;
+			if (childCanAnswer) {
+				res = attemptNearest(k, ceiling, child, ceiling, childVersion);
+				if (res == NONE) {
+					if (child.value != null && child.version == childVersion) {
+						return child;
+					}
+					res = attemptNearest(k, ceiling, child, !ceiling, childVersion);
+				}
+			}
+			else {
+				res = attemptNearest(k, ceiling, child, !ceiling, childVersion);
+			}
+			if (res != RETRY) {
+				return res;
+			}
+		}
+	}
+
+	// Wait for the writer to finish changing node
+	private static void waitUntilChanged(Node node, long version) {
+		for (int i = 0; node.version == version; i++) {
+			if (i < SPINS) {
+				Thread.onSpinWait();
+			}
+			else {
+				Thread.yield();
+			}
+		}
+	}
+
+  /**
+   * public int insert(int k, String i)
+   *
+   * inserts an item with key k and info i to the AVL tree.
+   * returns the number of rebalancing operations, counted as in IntAVLTree,
+   * or -1 if an item with key k already exists in the tree.
+   */
+	// Time complexity  O(logn) when there are no concurrent changes on the path
+	public int insert(int k, String i) {
+		int[] ops = new int[1];
+		while (true) {
+			Object res = attemptUpdate(k, i, this.holder, false, this.holder.version, ops);
+			if (res != RETRY) {
+				return (res == null) ? ops[0] : -1;
+			}
+		}
+	}
+
+  /**
+   * public int delete(int k)
+   *
+   * deletes an item with key k from the binary tree, if it is there.
+   * returns the number of rebalancing operations, counted as in IntAVLTree,
+   * or -1 if an item with key k was not found in the tree.
+   */
+	// Time complexity  O(logn) when there are no concurrent changes on the path
+	public int delete(int k) {
+		int[] ops = new int[1];
+		while (true) {
+			Object res = attemptUpdate(k, null, this.holder, false, this.holder.version, ops);
+			if (res != RETRY) {
+				return (res == null) ? -1 : ops[0];
+			}
+		}
+	}
+
+	// Insert k with newValue, or delete k if newValue is null, in the subtree of node in direction
+	// goLeft, where nodeVersion is the version of node when we decided to go there.
+	// The walk down takes no lock, like attemptGet. Returns the info k had (null if it was not
+	// in the tree), or RETRY if node changed. The rebalancing operations are added to ops[0]
+	private Object attemptUpdate(int k, String newValue, Node node, boolean goLeft, long nodeVersion, int[] ops) {
+		while (true) {
+			Node child = node.child(goLeft);
+			if (node.version != nodeVersion) {
+				return RETRY;
+			}
+			if (child == null) {
+				if (newValue == null) {
+					return null; // nothing to delete
+				}
+				Node damaged;
+				synchronized (node) {
+					if (node.version != nodeVersion) {
+						return RETRY;
+					}
+					if (node.child(goLeft) != null) {
+						continue; // another writer inserted here, read the son again
+					}
+					// the volatile write publishes the new node to the readers
+					if (goLeft) {
+						node.left = new Node(k, newValue, node);
+					}
+					else {
+						node.right = new Node(k, newValue, node);
+					}
+					this.size.incrementAndGet();
+					damaged = fixHeight(node, ops);
+				}
+				fixHeightAndRebalance(damaged, ops);
+				return null;
+			}
+			if (child.key == k) {
+				Object res = attemptNodeUpdate(newValue, node, child, ops);
+				if (res != RETRY) {
+					return res;
+				}
+				continue; // child changed, read it again
+			}
+			long childVersion = child.version;
+			if ((childVersion & SHRINKING) != 0) {
+				waitUntilChanged(child, childVersion);
+			}
+			else if (childVersion != UNLINKED && child == node.child(goLeft)) {
+				if (node.version != nodeVersion) {
+					return RETRY;
+				}
+				Object res = attemptUpdate(k, newValue, child, k < child.key, childVersion, ops);
+				if (res != RETRY) {
+					return res;
+				}
+			}
+			// child changed, read it again
+		}
+	}
+
+	// Insert or delete the item of node, the son of nodeParent which holds the key.
+	// A node with at most one son is unlinked by the delete, under the locks of nodeParent and node.
+	// Otherwise only node is locked: its info is set, or it stays as a routing node.
+	// Returns the info node had, or RETRY if it moved or was unlinked
+	private Object attemptNodeUpdate(String newValue, Node nodeParent, Node node, int[] ops) {
+		if (newValue == null && node.value == null) {
+			return null; // nothing to delete
+		}
+		if (newValue == null && (node.left == null || node.right == null)) {
+			String prev;
+			Node damaged;
+			synchronized (nodeParent) {
+				if (nodeParent.version == UNLINKED || node.parent != nodeParent) {
+					return RETRY;
+				}
+				synchronized (node) {
+					prev = node.value;
+					if (prev == null) {
+						return null;
+					}
+					if (!attemptUnlink(nodeParent, node)) {
+						return RETRY;
+					}
+				}
+				this.size.decrementAndGet();
+				damaged = fixHeight(nodeParent, ops);
+			}
+			fixHeightAndRebalance(damaged, ops);
+			return prev;
+		}
+		synchronized (node) {
+			if (node.version == UNLINKED) {
+				return RETRY;
+			}
+			String prev = node.value;
+			if (newValue == null) {
+				if (prev == null) {
+					return null;
+				}
+				if (node.left == null || node.right == null) {
+					return RETRY; // a son was removed meanwhile, so node can be unlinked now
+				}
+				node.value = null; // from now on readers do not see the item, node stays as a routing node
+				this.size.decrementAndGet();
+			}
+			else if (prev == null) {
+				node.value = newValue; // a routing node gets its item back
+				this.size.incrementAndGet();
+			}
+			return prev;
+		}
+	}
+
+	// With nodeParent and node locked: replace node, which must have at most one son,
+	// by that son. Returns false if node is not a son of nodeParent or has two sons
+	// Time complexity  O(1)
+	private static boolean attemptUnlink(Node nodeParent, Node node) {
+		Node parentLeft = nodeParent.left;
+		if (parentLeft != node && nodeParent.right != node) {
+			return false;
+		}
+		Node left = node.left;
+		Node right = node.right;
+		if (left != null && right != null) {
+			return false;
+		}
+		Node child = (left != null) ? left : right;
+		if (parentLeft == node) {
+			nodeParent.left = child;
+		}
+		else {
+			nodeParent.right = child;
+		}
+		if (child != null) {
+			child.parent = nodeParent;
+		}
+		node.version = UNLINKED;
+		node.value = null;
+		return true;
+	}
+
+	// Returns the height node should have, or UNLINK_REQUIRED if it is a routing node
+	// with at most one son, REBALANCE_REQUIRED if its sons are unbalanced,
+	// or NOTHING_REQUIRED if its height is right. The fields are read without a lock
+	// Time complexity  O(1)
+	private static int nodeCondition(Node node) {
+		Node left = node.left;
+		Node right = node.right;
+		if ((left == null || right == null) && node.value == null) {
+			return UNLINK_REQUIRED;
+		}
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+		int balance = leftHeight - rightHeight;
+		if (balance < -1 || balance > 1) {
+			return REBALANCE_REQUIRED;
+		}
+		int newHeight = 1 + Math.max(leftHeight, rightHeight);
+		return (newHeight != node.height) ? newHeight : NOTHING_REQUIRED;
+	}
+
+	// With node locked: fix its height. Returns the next node to fix, which is node itself
+	// if it needs a rotation or an unlink (these take the lock of its parent), the parent of node
+	// if the height changed, or null if nothing is left to do
+	// Time complexity  O(1)
+	private Node fixHeight(Node node, int[] ops) {
+		if (node == this.holder) {
+			return null;
+		}
+		int condition = nodeCondition(node);
+		if (condition == REBALANCE_REQUIRED || condition == UNLINK_REQUIRED) {
+			return node;
+		}
+		if (condition == NOTHING_REQUIRED) {
+			return null;
+		}
+		ops[0] += Math.abs(condition - node.height);
+		node.height = condition;
+		return node.parent;
+	}
+
+	// Fix the heights from node up, rotating where a node is unbalanced and unlinking
+	// routing nodes which were left with at most one son.
+	// Every step locks only the nodes it changes, from the top down: the node for a
+	// height change, or the parent, the node, its son and maybe a grandson for a rotation.
+	// A step whose nodes moved meanwhile is read again
+	// Time complexity  O(logn) when there are no concurrent changes on the path
+	private void fixHeightAndRebalance(Node node, int[] ops) {
+		while (node != null && node != this.holder) {
+			int condition = nodeCondition(node);
+			if (condition == NOTHING_REQUIRED || node.version == UNLINKED) {
+				return;
+			}
+			if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+				synchronized (node) {
+					node = fixHeight(node, ops);
+				}
+			}
+			else {
+				Node nodeParent = node.parent;
+				synchronized (nodeParent) {
+					if (nodeParent.version != UNLINKED && node.parent == nodeParent) {
+						synchronized (node) {
+							node = rebalance(nodeParent, node, ops);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	// With nodeParent and node locked: unlink node, rotate at node or fix its height.
+	// Returns the next node to fix, as fixHeight does
+	private Node rebalance(Node nodeParent, Node node, int[] ops) {
+		Node left = node.left;
+		Node right = node.right;
+		if ((left == null || right == null) && node.value == null) {
+			if (attemptUnlink(nodeParent, node)) {
+				return fixHeight(nodeParent, ops);
+			}
+			return node;
+		}
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+		int balance = leftHeight - rightHeight;
+		if (balance > 1) {
+			return rebalanceToRight(nodeParent, node, left, rightHeight, ops);
+		}
+		if (balance < -1) {
+			return rebalanceToLeft(nodeParent, node, right, leftHeight, ops);
+		}
+		int newHeight = 1 + Math.max(leftHeight, rightHeight);
+		if (newHeight != node.height) {
+			ops[0] += Math.abs(newHeight - node.height);
+			node.height = newHeight;
+			return fixHeight(nodeParent, ops);
+		}
+		return null;
+	}
+
+	// With nodeParent and node locked, where the left son is too high: lock the left son
+	// (and its right son for a double rotation) and rotate them above node
+	private Node rebalanceToRight(Node nodeParent, Node node, Node left, int rightHeight, int[] ops) {
+		synchronized (left) {
+			if (left.height - rightHeight <= 1) {
+				return node; // left changed meanwhile, look at node again
+			}
+			Node leftRight = left.right;
+			int leftLeftHeight = height(left.left);
+			int leftRightHeight = height(leftRight);
+			if (leftLeftHeight >= leftRightHeight) {
+				return rotateRight(nodeParent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight, ops);
+			}
+			synchronized (leftRight) {
+				leftRightHeight = leftRight.height;
+				if (leftLeftHeight >= leftRightHeight) {
+					return rotateRight(nodeParent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight, ops);
+				}
+				int leftRightLeftHeight = height(leftRight.left);
+				int balance = leftLeftHeight - leftRightLeftHeight;
+				// a double rotation must not leave left unbalanced
+				if (balance >= -1 && balance <= 1) {
+					return rotateRightOverLeft(nodeParent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightLeftHeight, ops);
+				}
+			}
+			// fix left first, node is fixed after it
+			return rebalanceToLeft(node, left, leftRight, leftLeftHeight, ops);
+		}
+	}
+
+	// The mirror image of rebalanceToRight
+	private Node rebalanceToLeft(Node nodeParent, Node node, Node right, int leftHeight, int[] ops) {
+		synchronized (right) {
+			if (right.height - leftHeight <= 1) {
+				return node;
+			}
+			Node rightLeft = right.left;
+			int rightRightHeight = height(right.right);
+			int rightLeftHeight = height(rightLeft);
+			if (rightRightHeight >= rightLeftHeight) {
+				return rotateLeft(nodeParent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight, ops);
+			}
+			synchronized (rightLeft) {
+				rightLeftHeight = rightLeft.height;
+				if (rightRightHeight >= rightLeftHeight) {
+					return rotateLeft(nodeParent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight, ops);
+				}
+				int rightLeftRightHeight = height(rightLeft.right);
+				int balance = rightRightHeight - rightLeftRightHeight;
+				if (balance >= -1 && balance <= 1) {
+					return rotateLeftOverRight(nodeParent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftRightHeight, ops);
+				}
+			}
+			return rebalanceToRight(node, right, rightLeft, rightRightHeight, ops);
+		}
+	}
+
+	// With nodeParent, node and left locked: rotate left, the left son of node, above it.
+	// node loses keys, so its version is marked as shrinking during the change and advanced after it.
+	// Returns the next node to fix
+	// Time complexity  O(1)
+	private Node rotateRight(Node nodeParent, Node node, Node left, int rightHeight, int leftLeftHeight, Node leftRight, int leftRightHeight, int[] ops) {
+		long version = node.version;
+		int oldHeight = node.height;
+		node.version = version | SHRINKING;
+		node.left = leftRight;
+		if (leftRight != null) {
+			leftRight.parent = node;
+		}
+		left.right = node;
+		node.parent = left;
+		replaceSon(nodeParent, node, left);
+		int nodeHeight = 1 + Math.max(leftRightHeight, rightHeight);
+		int leftNewHeight = 1 + Math.max(leftLeftHeight, nodeHeight);
+		ops[0] += 1 + Math.abs(nodeHeight - node.height) + Math.abs(leftNewHeight - left.height);
+		node.height = nodeHeight;
+		left.height = leftNewHeight;
+		node.version = version + SHRINK_COUNT;
+		return afterRotation(nodeParent, oldHeight, node, leftRightHeight - rightHeight, left, leftLeftHeight - nodeHeight, left.left == null, ops);
+	}
+
+	// The mirror image of rotateRight
+	// Time complexity  O(1)
+	private Node rotateLeft(Node nodeParent, Node node, Node right, int leftHeight, int rightRightHeight, Node rightLeft, int rightLeftHeight, int[] ops) {
+		long version = node.version;
+		int oldHeight = node.height;
+		node.version = version | SHRINKING;
+		node.right = rightLeft;
+		if (rightLeft != null) {
+			rightLeft.parent = node;
+		}
+		right.left = node;
+		node.parent = right;
+		replaceSon(nodeParent, node, right);
+		int nodeHeight = 1 + Math.max(rightLeftHeight, leftHeight);
+		int rightNewHeight = 1 + Math.max(rightRightHeight, nodeHeight);
+		ops[0] += 1 + Math.abs(nodeHeight - node.height) + Math.abs(rightNewHeight - right.height);
+		node.height = nodeHeight;
+		right.height = rightNewHeight;
+		node.version = version + SHRINK_COUNT;
+		return afterRotation(nodeParent, oldHeight, node, rightLeftHeight - leftHeight, right, rightRightHeight - nodeHeight, right.right == null, ops);
+	}
+
+	// With nodeParent, node, left and leftRight locked: rotate leftRight above left and then above node.
+	// node and left both lose keys, and left is unlinked if it is a routing node left with one son.
+	// Returns the next node to fix
+	// Time complexity  O(1)
+	private Node rotateRightOverLeft(Node nodeParent, Node node, Node left, int rightHeight, int leftLeftHeight, Node leftRight, int leftRightLeftHeight, int[] ops) {
+		long version = node.version;
+		int oldHeight = node.height;
+		long leftVersion = left.version;
+		Node leftRightLeft = leftRight.left;
+		Node leftRightRight = leftRight.right;
+		int leftRightRightHeight = height(leftRightRight);
+		node.version = version | SHRINKING;
+		left.version = leftVersion | SHRINKING;
+		node.left = leftRightRight;
+		if (leftRightRight != null) {
+			leftRightRight.parent = node;
+		}
+		left.right = leftRightLeft;
+		if (leftRightLeft != null) {
+			leftRightLeft.parent = left;
+		}
+		leftRight.left = left;
+		left.parent = leftRight;
+		leftRight.right = node;
+		node.parent = leftRight;
+		replaceSon(nodeParent, node, leftRight);
+		int nodeHeight = 1 + Math.max(leftRightRightHeight, rightHeight);
+		int leftNewHeight = 1 + Math.max(leftLeftHeight, leftRightLeftHeight);
+		ops[0] += 2 + Math.abs(nodeHeight - node.height) + Math.abs(leftNewHeight - left.height);
+		node.height = nodeHeight;
+		left.height = leftNewHeight;
+		node.version = version + SHRINK_COUNT;
+		left.version = leftVersion + SHRINK_COUNT;
+		if (left.value == null && (left.left == null || left.right == null)) {
+			// left is a routing node left with one son, it is not on the path up so unlink it now
+			attemptUnlink(leftRight, left);
+			leftNewHeight = height(leftRight.left);
+		}
+		int topHeight = 1 + Math.max(leftNewHeight, nodeHeight);
+		ops[0] += Math.abs(topHeight - leftRight.height);
+		leftRight.height = topHeight;
+		return afterRotation(nodeParent, oldHeight, node, leftRightRightHeight - rightHeight, leftRight, leftNewHeight - nodeHeight, false, ops);
+	}
+
+	// The mirror image of rotateRightOverLeft
+	// Time complexity  O(1)
+	private Node rotateLeftOverRight(Node nodeParent, Node node, Node right, int leftHeight, int rightRightHeight, Node rightLeft, int rightLeftRightHeight, int[] ops) {
+		long version = node.version;
+		int oldHeight = node.height;
+		long rightVersion = right.version;
+		Node rightLeftRight = rightLeft.right;
+		Node rightLeftLeft = rightLeft.left;
+		int rightLeftLeftHeight = height(rightLeftLeft);
+		node.version = version | SHRINKING;
+		right.version = rightVersion | SHRINKING;
+		node.right = rightLeftLeft;
+		if (rightLeftLeft != null) {
+			rightLeftLeft.parent = node;
+		}
+		right.left = rightLeftRight;
+		if (rightLeftRight != null) {
+			rightLeftRight.parent = right;
+		}
+		rightLeft.right = right;
+		right.parent = rightLeft;
+		rightLeft.left = node;
+		node.parent = rightLeft;
+		replaceSon(nodeParent, node, rightLeft);
+		int nodeHeight = 1 + Math.max(rightLeftLeftHeight, leftHeight);
+		int rightNewHeight = 1 + Math.max(rightRightHeight, rightLeftRightHeight);
+		ops[0] += 2 + Math.abs(nodeHeight - node.height) + Math.abs(rightNewHeight - right.height);
+		node.height = nodeHeight;
+		right.height = rightNewHeight;
+		node.version = version + SHRINK_COUNT;
+		right.version = rightVersion + SHRINK_COUNT;
+		if (right.value == null && (right.left == null || right.right == null)) {
+			attemptUnlink(rightLeft, right);
+			rightNewHeight = height(rightLeft.right);
+		}
+		int topHeight = 1 + Math.max(rightNewHeight, nodeHeight);
+		ops[0] += Math.abs(topHeight - rightLeft.height);
+		rightLeft.height = topHeight;
+		return afterRotation(nodeParent, oldHeight, node, rightLeftLeftHeight - leftHeight, rightLeft, rightNewHeight - nodeHeight, false, ops);
+	}
+
+	// After a rotation which moved node down under top: returns node if it is still unbalanced
+	// or a routing node with one son, top if it is unbalanced (or a routing node left with
+	// one son when topLostSon), and otherwise the parent, whose height may have changed.
+	// When node or top is returned, top keeps oldHeight, the height of the subtree before the
+	// rotation, so the fix going up from them does not stop before it reaches the parent
+	private Node afterRotation(Node nodeParent, int oldHeight, Node node, int nodeBalance, Node top, int topBalance, boolean topLostSon, int[] ops) {
+		Node next = null;
+		if (nodeBalance < -1 || nodeBalance > 1 || ((node.left == null || node.right == null) && node.value == null)) {
+			next = node;
+		}
+		else if (topBalance < -1 || topBalance > 1 || (topLostSon && top.value == null)) {
+			next = top;
+		}
+		if (next == null) {
+			return fixHeight(nodeParent, ops);
+		}
+		top.height = oldHeight;
+		return next;
+	}
+
+	private static int height(Node node) {
+		return (node == null) ? -1 : node.height;
+	}
+
+	// Put newSon in the place of oldSon under nodeParent
+	// Time complexity  O(1)
+	private static void replaceSon(Node nodeParent, Node oldSon, Node newSon) {
+		newSon.parent = nodeParent;
+		if (nodeParent.left == oldSon) {
+			nodeParent.left = newSon;
+		}
+		else {
+			nodeParent.right = newSon;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * ConcurrentAVLTreeBenchmark
+ *
+ * The contention benchmark of ConcurrentAVLTree against AVLTree behind one global lock.
+ * Both trees are filled with half of the key range, then every thread runs random
+ * searches, inserts and deletes over the whole range for a fixed time.
+ * Inserts and deletes are equally likely, so the size of the trees stays about the same.
+ *
+ * Usage: java ConcurrentAVLTreeBenchmark [keys] [millis per run]
+ * Prints the throughput in millions of operations per second for 1 to 64 threads
+ * and reads of 99%, 90% and 50% of the operations.
+ *
+ */
+
+public class ConcurrentAVLTreeBenchmark {
+
+	private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+	private static final int[] READ_PERCENTS = {99, 90, 50};
+
+	/**
+	 * private interface Target
+	 *
+	 * The operations of a tree under test.
+	 */
+	private interface Target {
+		String search(int k);
+		int insert(int k, String i);
+		int delete(int k);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int keys = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+		long millis = (args.length > 1) ? Long.parseLong(args[1]) : 1000;
+		System.out.printf("%d keys, %d ms per run, %d cpus%n", keys, millis, Runtime.getRuntime().availableProcessors());
+		System.out.printf("%-8s %-8s %14s %14s%n", "reads", "threads", "global lock", "concurrent");
+		for (int readPercent : READ_PERCENTS) {
+			for (int threads : THREADS) {
+				double locked = run(lockedTree(keys), keys, threads, readPercent, millis);
+				double concurrent = run(concurrentTree(keys), keys, threads, readPercent, millis);
+				System.out.printf("%-8s %-8d %9.2f Mops %9.2f Mops%n", readPercent + "%", threads, locked, concurrent);
+			}
+		}
+	}
+
+	// An AVLTree with every second key, where every operation takes the lock of the tree
+	private static Target lockedTree(int keys) {
+		AVLTree tree = new AVLTree();
+		for (int k = 0; k < keys; k += 2) {
+			tree.insert(k, "info");
+		}
+		return new Target() {
+			public synchronized String search(int k) {
+				return tree.search(k);
+			}
+
+			public synchronized int insert(int k, String i) {
+				return tree.insert(k, i);
+			}
+
+			public synchronized int delete(int k) {
+				return tree.delete(k);
+			}
+		};
+	}
+
+	// A ConcurrentAVLTree with every second key
+	private static Target concurrentTree(int keys) {
+		ConcurrentAVLTree tree = new ConcurrentAVLTree();
+		for (int k = 0; k < keys; k += 2) {
+			tree.insert(k, "info");
+		}
+		return new Target() {
+			public String search(int k) {
+				return tree.search(k);
+			}
+
+			public int insert(int k, String i) {
+				return tree.insert(k, i);
+			}
+
+			public int delete(int k) {
+				return tree.delete(k);
+			}
+		};
+	}
+
+	// Run the threads on target for millis and return the throughput in Mops/s
+	private static double run(Target target, int keys, int threads, int readPercent, long millis) throws InterruptedException {
+		LongAdder operations = new LongAdder();
+		CountDownLatch start = new CountDownLatch(1);
+		long[] deadline = new long[1];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				try {
+					start.await();
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				long count = 0;
+				while ((count & 0xFF) != 0 || System.nanoTime() < deadline[0]) {
+					int k = random.nextInt(keys);
+					int dice = random.nextInt(100);
+					if (dice < readPercent) {
+						target.search(k);
+					}
+					else if (((dice - readPercent) & 1) == 0) {
+						target.insert(k, "info");
+					}
+					else {
+						target.delete(k);
+					}
+					count++;
+				}
+				operations.add(count);
+			});
+			workers[t].start();
+		}
+		long begin = System.nanoTime();
+		deadline[0] = begin + millis * 1_000_000;
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - begin;
+		return operations.sum() * 1000.0 / elapsed;
+	}
+}
@@ -0,0 +1,795 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * DurableAVLTree
+ *
+ * An AVLTree whose changes survive a crash. It can be shared by threads.
+ *
+ * Every change is appended to a write-ahead log in the directory of the tree,
+ * and insert, delete, insertAll and deleteAll return only after their log record
+ * is on the storage device. The flusher thread syncs the log once for all the records
+ * appended in a window of maxCommitDelayNanos or until maxCommitBytes wait (group commit),
+ * so concurrent writers share one fsync.
+ *
+ * Once the log is larger than compactBytes, a new log is started and a snapshot
+ * of the tree (AVLTree.save) is written in the background. Then the older files are removed.
+ * Files of the directory: snapshot.g holds every change before wal.g.
+ * open loads the newest snapshot and replays the logs after it. A torn record
+ * at the end of the last log (a crash in the middle of a write) is cut off.
+ *
+ * Reads see every change which was applied, also before it is durable.
+ *
+ */
+
+public class DurableAVLTree implements AutoCloseable {
+
+	public static final long DEFAULT_COMMIT_DELAY_NANOS = 2_000_000L; // 2ms
+	public static final int DEFAULT_COMMIT_BYTES = 1 << 20;
+	public static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+	private static final byte INSERT_ALL = 3;
+	private static final byte DELETE_ALL = 4;
+	private static final int RECORD_HEADER = 8; // length and CRC32 of the payload
+	private static final int LATENCY_SAMPLES = 1 << 14; // the latest commit latencies are kept
+	private static final String SNAPSHOT = "snapshot.";
+	private static final String WAL = "wal.";
+	private static final String TMP = ".tmp";
+
+	private final Path dir;
+	private final long maxCommitDelayNanos;
+	private final int maxCommitBytes;
+	private final long compactBytes;
+	private final AVLTree tree;
+
+	private final ReentrantLock lock = new ReentrantLock(); // guards all the fields below
+	private final Condition appendedRecord = this.lock.newCondition(); // the flusher waits for records
+	private final Condition committedRecords = this.lock.newCondition(); // writers wait for the flusher
+	private final Condition finishedCompaction = this.lock.newCondition(); // a new compaction waits for the running one
+
+	private FileChannel wal;
+	private long generation;
+	private long walBytes; // of the current log, including pending records
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 16); // records not written yet
+	private ByteBuffer writing = ByteBuffer.allocate(1 << 16); // records written by the flusher now
+	private boolean flushing;
+	private long appended; // bytes appended to the logs since open
+	private long durable; // bytes synced of them
+	private IOException failure; // of the log, after it nothing is changed anymore
+	private IOException compactionFailure; // of the last snapshot, the logs are kept then
+	private boolean closed;
+	private final Thread flusher;
+	private Thread compactor;
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private long commits;
+
+	private DurableAVLTree(Path dir, long maxCommitDelayNanos, int maxCommitBytes, long compactBytes,
+			AVLTree tree, FileChannel wal, long generation) throws IOException {
+		this.dir = dir;
+		this.maxCommitDelayNanos = maxCommitDelayNanos;
+		this.maxCommitBytes = maxCommitBytes;
+		this.compactBytes = compactBytes;
+		this.tree = tree;
+		this.wal = wal;
+		this.generation = generation;
+		this.walBytes = wal.size();
+		this.flusher = new Thread(this::flushLoop, "DurableAVLTree-flusher");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+  /**
+   * public static DurableAVLTree open(Path dir)
+   *
+   * Opens the tree stored in dir with the default commit and compaction settings,
+   * or creates an empty one.
+   */
+	// Time complexity  O(n + length of the logs)
+	public static DurableAVLTree open(Path dir) throws IOException {
+		return open(dir, DEFAULT_COMMIT_DELAY_NANOS, DEFAULT_COMMIT_BYTES, DEFAULT_COMPACT_BYTES);
+	}
+
+  /**
+   * public static DurableAVLTree open(Path dir, long maxCommitDelayNanos, int maxCommitBytes, long compactBytes)
+   *
+   * Opens the tree stored in dir, or creates an empty one.
+   * A group commit syncs the log at most maxCommitDelayNanos after its first record
+   * or once maxCommitBytes are pending. A snapshot is taken once the log has compactBytes.
+   * precondition: dir is used by no other open tree
+   */
+	// Time complexity  O(n + length of the logs)
+	public static DurableAVLTree open(Path dir, long maxCommitDelayNanos, int maxCommitBytes, long compactBytes)
+			throws IOException {
+		Files.createDirectories(dir);
+		long snapshotGeneration = -1;
+		List<Long> walGenerations = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(TMP)) { // an unfinished snapshot
+					Files.delete(file);
+				}
+				else if (name.startsWith(SNAPSHOT)) {
+					snapshotGeneration = Math.max(snapshotGeneration, Long.parseLong(name.substring(SNAPSHOT.length())));
+				}
+				else if (name.startsWith(WAL)) {
+					walGenerations.add(Long.parseLong(name.substring(WAL.length())));
+				}
+			}
+		}
+		AVLTree tree = (snapshotGeneration == -1) ? new AVLTree() : AVLTree.load(dir.resolve(SNAPSHOT + snapshotGeneration));
+		long generation = Math.max(snapshotGeneration, 0);
+		walGenerations.sort(null);
+		for (int j = 0; j < walGenerations.size(); j++) {
+			long walGeneration = walGenerations.get(j);
+			if (walGeneration < snapshotGeneration) { // already in the snapshot
+				Files.delete(dir.resolve(WAL + walGeneration));
+				continue;
+			}
+			replay(tree, dir.resolve(WAL + walGeneration), j == walGenerations.size() - 1);
+			generation = walGeneration;
+		}
+		deleteBefore(dir, snapshotGeneration, SNAPSHOT);
+		FileChannel wal = FileChannel.open(dir.resolve(WAL + generation),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		wal.position(wal.size());
+		return new DurableAVLTree(dir, maxCommitDelayNanos, maxCommitBytes, compactBytes, tree, wal, generation);
+	}
+
+	// Apply the records of a log to tree. A torn record is cut off the last log,
+	// in an older log it means the log is corrupted
+	// Time complexity  O(length of the log + changes of the records)
+	private static void replay(AVLTree tree, Path path, boolean last) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("log is larger than 2GB: " + path);
+			}
+			ByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			int pos = 0;
+			CRC32 crc = new CRC32();
+			while (pos < log.limit()) {
+				int len = (log.limit() - pos >= RECORD_HEADER) ? log.getInt(pos) : -1;
+				if (len <= 0 || len > log.limit() - pos - RECORD_HEADER) {
+					break;
+				}
+				ByteBuffer payload = log.duplicate().limit(pos + RECORD_HEADER + len).position(pos + RECORD_HEADER);
+				crc.reset();
+				crc.update(payload.duplicate());
+				if ((int)crc.getValue() != log.getInt(pos + 4)) {
+					break;
+				}
+				apply(tree, payload);
+				pos += RECORD_HEADER + len;
+			}
+			if (pos < log.limit()) {
+				if (!last) {
+					throw new IOException("corrupted log: " + path);
+				}
+				channel.truncate(pos);
+				channel.force(false);
+			}
+		}
+	}
+
+	// Time complexity  O(length of the record + its changes)
+	private static void apply(AVLTree tree, ByteBuffer payload) {
+		byte op = payload.get();
+		if (op == INSERT) {
+			int key = payload.getInt();
+			tree.insert(key, getValue(payload));
+		}
+		else if (op == DELETE) {
+			tree.delete(payload.getInt());
+		}
+		else {
+			int[] keys = new int[payload.getInt()];
+			String[] values = new String[keys.length];
+			for (int j = 0; j < keys.length; j++) {
+				keys[j] = payload.getInt();
+				values[j] = (op == INSERT_ALL) ? getValue(payload) : null;
+			}
+			if (op == INSERT_ALL) {
+				tree.insertAll(keys, values);
+			}
+			else {
+				tree.deleteAll(keys);
+			}
+		}
+	}
+
+	private static String getValue(ByteBuffer payload) {
+		int len = payload.getInt();
+		if (len == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[len];
+		payload.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+  /**
+   * public String search(int k)
+   *
+   * returns the info of an item with key k if it exists in the tree
+   * otherwise, returns null
+   */
+	// Time complexity  O(logn)
+	public String search(int k) {
+		this.lock.lock();
+		try {
+			return this.tree.search(k);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+  /**
+   * public int insert(int k, String i)
+   *
+   * inserts an item with key k and info i to the tree like AVLTree.insert,
+   * and returns once the change is durable.
+   * Throws IOException if the log failed, then the tree can not be changed anymore.
+   */
+	// Time complexity  O(logn) and a group commit
+	public int insert(int k, String i) throws IOException {
+		long start = System.nanoTime();
+		this.lock.lock();
+		try {
+			checkOpen();
+			int res = this.tree.insert(k, i);
+			if (res != -1) {
+				byte[] value = encode(i);
+				int record = beginRecord(INSERT, 4 + valueSize(value));
+				this.pending.putInt(k);
+				putValue(value);
+				endRecord(record);
+			}
+			awaitDurable(start, res != -1);
+			return res;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+  /**
+   * public int delete(int k)
+   *
+   * deletes an item with key k from the tree like AVLTree.delete,
+   * and returns once the change is durable.
+   * Throws IOException if the log failed, then the tree can not be changed anymore.
+   */
+	// Time complexity  O(logn) and a group commit
+	public int delete(int k) throws IOException {
+		long start = System.nanoTime();
+		this.lock.lock();
+		try {
+			checkOpen();
+			int res = this.tree.delete(k);
+			if (res != -1) {
+				int record = beginRecord(DELETE, 4);
+				this.pending.putInt(k);
+				endRecord(record);
+			}
+			awaitDurable(start, res != -1);
+			return res;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+  /**
+   * public AVLTree.BatchResult insertAll(int[] keys, String[] values)
+   *
+   * inserts the items like AVLTree.insertAll, with one log record for the whole batch,
+   * and returns once the batch is durable.
+   * Throws IOException if the log failed, then the tree can not be changed anymore.
+   * precondition: values.length == keys.length
+   */
+	// Time complexity  as AVLTree.insertAll and a group commit
+	public AVLTree.BatchResult insertAll(int[] keys, String[] values) throws IOException {
+		long start = System.nanoTime();
+		this.lock.lock();
+		try {
+			checkOpen();
+			AVLTree.BatchResult res = this.tree.insertAll(keys, values);
+			int count = 0;
+			int size = 4;
+			byte[][] encoded = new byte[keys.length][];
+			for (int j = 0; j < keys.length; j++) {
+				if (res.outcomes[j] == 0) { // only the inserted items are logged
+					encoded[j] = encode(values[j]);
+					size += 4 + valueSize(encoded[j]);
+					count++;
+				}
+			}
+			if (count > 0) {
+				int record = beginRecord(INSERT_ALL, size);
+				this.pending.putInt(count);
+				for (int j = 0; j < keys.length; j++) {
+					if (res.outcomes[j] == 0) {
+						this.pending.putInt(keys[j]);
+						putValue(encoded[j]);
+					}
+				}
+				endRecord(record);
+			}
+			awaitDurable(start, count > 0);
+			return res;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+  /**
+   * public AVLTree.BatchResult deleteAll(int[] keys)
+   *
+   * deletes the items like AVLTree.deleteAll, with one log record for the whole batch,
+   * and returns once the batch is durable.
+   * Throws IOException if the log failed, then the tree can not be changed anymore.
+   */
+	// Time complexity  as AVLTree.deleteAll and a group commit
+	public AVLTree.BatchResult deleteAll(int[] keys) throws IOException {
+		long start = System.nanoTime();
+		this.lock.lock();
+		try {
+			checkOpen();
+			AVLTree.BatchResult res = this.tree.deleteAll(keys);
+			int count = 0;
+			for (int outcome : res.outcomes) {
+				count += (outcome == 0) ? 1 : 0;
+			}
+			if (count > 0) {
+				int record = beginRecord(DELETE_ALL, 4 + 4 * count);
+				this.pending.putInt(count);
+				for (int j = 0; j < keys.length; j++) {
+					if (res.outcomes[j] == 0) {
+						this.pending.putInt(keys[j]);
+					}
+				}
+				endRecord(record);
+			}
+			awaitDurable(start, count > 0);
+			return res;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+   /**
+    * public int size()
+    *
+    * Returns the number of items in the tree.
+    */
+	// Time complexity  O(1)
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.tree.size();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+  /**
+   * public int[] keysToArray()
+   *
+   * Returns a sorted array which contains all keys in the tree,
+   * or an empty array if the tree is empty.
+   */
+	// Time complexity  O(n)
+	public int[] keysToArray() {
+		this.lock.lock();
+		try {
+			return this.tree.keysToArray();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+  /**
+   * public String[] infoToArray()
+   *
+   * Returns an array which contains all info in the tree,
+   * sorted by their respective keys,
+   * or an empty array if the tree is empty.
+   */
+	// Time complexity  O(n)
+	public String[] infoToArray() {
+		this.lock.lock();
+		try {
+			return this.tree.infoToArray();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+  /**
+   * public long commitLatencyPercentile(double p)
+   *
+   * Returns the p-th percentile (0 < p <= 100) in nanoseconds of the time the latest
+   * changes waited from their call until they were durable, or 0 if there were none.
+   */
+	// Time complexity  O(LATENCY_SAMPLES log LATENCY_SAMPLES)
+	public long commitLatencyPercentile(double p) {
+		long[] samples;
+		this.lock.lock();
+		try {
+			samples = Arrays.copyOf(this.latencies, (int)Math.min(this.commits, LATENCY_SAMPLES));
+		}
+		finally {
+			this.lock.unlock();
+		}
+		if (samples.length == 0) {
+			return 0;
+		}
+		Arrays.sort(samples);
+		int index = (int)Math.ceil(p / 100 * samples.length) - 1;
+		return samples[Math.max(0, Math.min(index, samples.length - 1))];
+	}
+
+  /**
+   * public void compact()
+   *
+   * Starts a new log and writes a snapshot of the tree, then removes the older files.
+   * Returns once the snapshot is durable. Compaction also runs in the background
+   * once the log has compactBytes.
+   * Throws IOException if the snapshot could not be written, the logs are kept then.
+   */
+	// Time complexity  O(n)
+	public void compact() throws IOException {
+		Thread snapshotWriter;
+		this.lock.lock();
+		try {
+			checkOpen();
+			while (this.compactor != null) { // wait for the running compaction first, another may start meanwhile
+				Thread running = this.compactor;
+				this.lock.unlock();
+				try {
+					joinUninterruptibly(running);
+				}
+				finally {
+					this.lock.lock();
+				}
+				checkOpen();
+			}
+			snapshotWriter = startCompaction();
+		}
+		finally {
+			this.lock.unlock();
+		}
+		joinUninterruptibly(snapshotWriter);
+		this.lock.lock();
+		try {
+			if (this.compactionFailure != null) {
+				throw new IOException("compaction failed", this.compactionFailure);
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+  /**
+   * public void close()
+   *
+   * Syncs the pending records, waits for a running compaction and closes the log.
+   */
+	public void close() throws IOException {
+		this.lock.lock();
+		try {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			this.appendedRecord.signal();
+		}
+		finally {
+			this.lock.unlock();
+		}
+		joinUninterruptibly(this.flusher);
+		Thread running;
+		this.lock.lock();
+		try {
+			running = this.compactor;
+		}
+		finally {
+			this.lock.unlock();
+		}
+		if (running != null) {
+			joinUninterruptibly(running);
+		}
+		this.wal.close();
+		if (this.failure != null) {
+			throw new IOException("write-ahead log failed", this.failure);
+		}
+	}
+
+	// Time complexity  O(1)
+	private void checkOpen() throws IOException {
+		if (this.failure != null) {
+			throw new IOException("write-ahead log failed", this.failure);
+		}
+		if (this.closed) {
+			throw new IllegalStateException("the tree is closed");
+		}
+	}
+
+	// Reserve the header of a record with a payload of op and size more bytes.
+	// Returns the position of the record
+	// Time complexity  O(1) amortized
+	private int beginRecord(byte op, int size) {
+		int needed = RECORD_HEADER + 1 + size;
+		if (this.pending.remaining() < needed) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * this.pending.capacity(), this.pending.position() + needed));
+			this.pending.flip();
+			larger.put(this.pending);
+			this.pending = larger;
+		}
+		int record = this.pending.position();
+		this.pending.position(record + RECORD_HEADER);
+		this.pending.put(op);
+		return record;
+	}
+
+	// Fill the header of the record at position record and wake the flusher
+	// Time complexity  O(length of the record)
+	private void endRecord(int record) {
+		int len = this.pending.position() - record - RECORD_HEADER;
+		CRC32 crc = new CRC32();
+		crc.update(this.pending.duplicate().limit(this.pending.position()).position(record + RECORD_HEADER));
+		this.pending.putInt(record, len);
+		this.pending.putInt(record + 4, (int)crc.getValue());
+		this.appended += RECORD_HEADER + len;
+		this.walBytes += RECORD_HEADER + len;
+		this.appendedRecord.signal();
+	}
+
+	private static byte[] encode(String value) {
+		return (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int valueSize(byte[] value) {
+		return 4 + ((value == null) ? 0 : value.length);
+	}
+
+	// Time complexity  O(length of the value)
+	private void putValue(byte[] value) {
+		if (value == null) {
+			this.pending.putInt(-1);
+		}
+		else {
+			this.pending.putInt(value.length);
+			this.pending.put(value);
+		}
+	}
+
+	// Wait (lock held) until every record appended so far is durable.
+	// The latency is sampled only for changes which wrote a record
+	// Time complexity  O(1) and a group commit
+	private void awaitDurable(long start, boolean sample) throws IOException {
+		long ticket = this.appended;
+		while (this.durable < ticket && this.failure == null) {
+			this.committedRecords.awaitUninterruptibly();
+		}
+		if (this.durable < ticket) {
+			throw new IOException("write-ahead log failed", this.failure);
+		}
+		if (sample) {
+			this.latencies[(int)(this.commits++ % LATENCY_SAMPLES)] = System.nanoTime() - start;
+		}
+	}
+
+	// The flusher thread: wait for a record, then for the end of its commit window
+	// or for maxCommitBytes, and sync all the pending records at once
+	private void flushLoop() {
+		this.lock.lock();
+		try {
+			while (true) {
+				while (this.pending.position() == 0 && !this.closed) {
+					this.appendedRecord.awaitUninterruptibly();
+				}
+				if (this.pending.position() == 0 || this.failure != null) { // closed
+					return;
+				}
+				long deadline = System.nanoTime() + this.maxCommitDelayNanos;
+				long left;
+				while (!this.closed && this.pending.position() < this.maxCommitBytes
+						&& (left = deadline - System.nanoTime()) > 0) {
+					try {
+						this.appendedRecord.awaitNanos(left);
+					}
+					catch (InterruptedException e) {
+						break;
+					}
+				}
+				flushPending();
+				if (this.walBytes >= this.compactBytes && this.compactor == null && this.failure == null && !this.closed) {
+					try {
+						startCompaction();
+					}
+					catch (IOException e) { // the log is kept and grows until the next try
+						this.compactionFailure = e;
+					}
+				}
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	// Write and sync the pending records without the lock, so writers can append meanwhile
+	// Time complexity  O(length of the records) and one fsync
+	private void flushPending() {
+		ByteBuffer records = this.pending;
+		this.pending = this.writing;
+		this.writing = records;
+		long target = this.appended;
+		FileChannel channel = this.wal;
+		this.flushing = true;
+		this.lock.unlock();
+		IOException error = null;
+		try {
+			writeFully(channel, records);
+		}
+		catch (IOException e) {
+			error = e;
+		}
+		finally {
+			this.lock.lock();
+		}
+		records.clear();
+		this.flushing = false;
+		if (error != null) {
+			this.failure = error;
+		}
+		else {
+			this.durable = target;
+		}
+		this.committedRecords.signalAll();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer records) throws IOException {
+		records.flip();
+		while (records.hasRemaining()) {
+			channel.write(records);
+		}
+		channel.force(false);
+	}
+
+	// Start a new log (lock held) and write a snapshot of the tree as it is now
+	// in a new thread. Returns the thread. The lock is released while waiting for the flusher
+	// or for a running compaction, so both are checked again after every wait:
+	// only one compaction runs at a time
+	// Time complexity  O(n) with the lock, and O(n) in the thread
+	private Thread startCompaction() throws IOException {
+		while (this.flushing || this.compactor != null) {
+			if (this.flushing) { // the flusher writes to the current log
+				this.committedRecords.awaitUninterruptibly();
+			}
+			else {
+				this.finishedCompaction.awaitUninterruptibly();
+			}
+			checkOpen();
+		}
+		checkOpen();
+		if (this.pending.position() > 0) { // the records of the current log are synced to it first
+			try {
+				writeFully(this.wal, this.pending);
+			}
+			catch (IOException e) {
+				this.failure = e;
+				this.committedRecords.signalAll();
+				throw new IOException("write-ahead log failed", e);
+			}
+			finally {
+				this.pending.clear();
+			}
+			this.durable = this.appended;
+			this.committedRecords.signalAll();
+		}
+		long newGeneration = this.generation + 1;
+		FileChannel newWal = FileChannel.open(this.dir.resolve(WAL + newGeneration),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		int[] keys = this.tree.keysToArray();
+		String[] values = this.tree.infoToArray();
+		try {
+			this.wal.close();
+		}
+		catch (IOException e) { // every record of the old log is synced already
+		}
+		this.wal = newWal;
+		this.generation = newGeneration;
+		this.walBytes = 0;
+		this.compactionFailure = null;
+		this.compactor = new Thread(() -> writeSnapshot(keys, values, newGeneration), "DurableAVLTree-compactor");
+		this.compactor.setDaemon(true);
+		this.compactor.start();
+		return this.compactor;
+	}
+
+	// Write snapshot.generation and remove the files before it
+	private void writeSnapshot(int[] keys, String[] values, long generation) {
+		IOException error = null;
+		Path tmp = this.dir.resolve(SNAPSHOT + generation + TMP);
+		try {
+			AVLTree.fromSorted(keys, values).save(tmp);
+			Files.move(tmp, this.dir.resolve(SNAPSHOT + generation), StandardCopyOption.ATOMIC_MOVE);
+			try (FileChannel directory = FileChannel.open(this.dir, StandardOpenOption.READ)) {
+				directory.force(true); // the rename is durable
+			}
+			catch (IOException e) { // some file systems can not sync a directory
+			}
+			deleteBefore(this.dir, generation, SNAPSHOT);
+			deleteBefore(this.dir, generation, WAL);
+		}
+		catch (IOException e) {
+			error = e;
+			try {
+				Files.deleteIfExists(tmp);
+			}
+			catch (IOException ignored) {
+			}
+		}
+		this.lock.lock();
+		try {
+			this.compactionFailure = error;
+			this.compactor = null;
+			this.finishedCompaction.signalAll();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	// Delete the files prefix.g of dir with g < generation
+	private static void deleteBefore(Path dir, long generation, String prefix) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (!name.endsWith(TMP) && Long.parseLong(name.substring(prefix.length())) < generation) {
+					Files.deleteIfExists(file); // an older compaction may have deleted it already
+				}
+			}
+		}
+	}
+
+	private static void joinUninterruptibly(Thread thread) {
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
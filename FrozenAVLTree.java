@@ -0,0 +1,266 @@
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ *
+ * FrozenAVLTree
+ *
+ * A read-only index of the items of an AVLTree (AVLTree.freeze) with
+ * distinct integer keys and info.
+ *
+ * The keys are kept in an int array in Eytzinger (BFS) order: the root at 1,
+ * the sons of position i at 2i and 2i+1, and the info in a parallel array.
+ * A search goes down by index arithmetic without pointers and without branches
+ * on the key comparisons, and the first levels of the tree share a few cache lines,
+ * so it misses the cache far less than AVLTree.search on large trees.
+ * Key order (floor, ceiling, ranges) is followed by the in-order successor
+ * of a position, computed from its bits.
+ *
+ */
+
+public class FrozenAVLTree {
+
+	private final int size;
+	private final int[] keys; // keys[0] is not used
+	private final String[] values;
+
+  /**
+   * public FrozenAVLTree(int[] keys, String[] values)
+   *
+   * Builds the index of the items (keys[j], values[j]).
+   * precondition: keys is sorted in increasing order without duplicates,
+   * values.length == keys.length
+   */
+	// Time complexity  O(n)
+	public FrozenAVLTree(int[] keys, String[] values) {
+		this.size = keys.length;
+		this.keys = new int[this.size + 1];
+		this.values = new String[this.size + 1];
+		fill(1, keys, values, 0);
+	}
+
+	// Put the sorted items from index j on into the subtree of position i in order.
+	// Returns the index of the next item
+	// Time complexity  O(size of the subtree), recursion depth O(logn)
+	private int fill(int i, int[] sortedKeys, String[] sortedValues, int j) {
+		if (i > this.size) {
+			return j;
+		}
+		j = fill(2 * i, sortedKeys, sortedValues, j);
+		this.keys[i] = sortedKeys[j];
+		this.values[i] = sortedValues[j];
+		return fill(2 * i + 1, sortedKeys, sortedValues, j + 1);
+	}
+
+  /**
+   * public boolean empty()
+   *
+   * returns true if and only if the index is empty
+   */
+	// Time complexity  O(1)
+	public boolean empty() {
+		return this.size == 0;
+	}
+
+   /**
+    * public int size()
+    *
+    * Returns the number of items in the index.
+    */
+	// Time complexity  O(1)
+	public int size() {
+		return this.size;
+	}
+
+ /**
+   * public String search(int k)
+   *
+   * returns the info of an item with key k if it exists in the index
+   * otherwise, returns null
+   */
+	// Time complexity  O(logn)
+	public String search(int k) {
+		int i = ceilingPosition(k);
+		return (i != 0 && this.keys[i] == k) ? this.values[i] : null;
+	}
+
+  /**
+   * public Integer ceilingKey(int k)
+   *
+   * Returns the smallest key >= k, or null if there is none.
+   */
+	// Time complexity  O(logn)
+	public Integer ceilingKey(int k) {
+		int i = ceilingPosition(k);
+		return (i == 0) ? null : this.keys[i];
+	}
+
+  /**
+   * public Integer floorKey(int k)
+   *
+   * Returns the largest key <= k, or null if there is none.
+   */
+	// Time complexity  O(logn)
+	public Integer floorKey(int k) {
+		int i = floorPosition(k);
+		return (i == 0) ? null : this.keys[i];
+	}
+
+  /**
+   * public Map.Entry<Integer, String> ceilingEntry(int k)
+   *
+   * Returns the item with the smallest key >= k, or null if there is none.
+   */
+	// Time complexity  O(logn)
+	public Map.Entry<Integer, String> ceilingEntry(int k) {
+		return entry(ceilingPosition(k));
+	}
+
+  /**
+   * public Map.Entry<Integer, String> floorEntry(int k)
+   *
+   * Returns the item with the largest key <= k, or null if there is none.
+   */
+	// Time complexity  O(logn)
+	public Map.Entry<Integer, String> floorEntry(int k) {
+		return entry(floorPosition(k));
+	}
+
+  /**
+   * public void forEachInRange(int lo, int hi, IntConsumer action)
+   *
+   * Runs action on every key with lo <= key < hi in increasing order
+   */
+	// Time complexity  O(logn + number of keys in the range)
+	public void forEachInRange(int lo, int hi, IntConsumer action) {
+		for (int i = ceilingPosition(lo); i != 0 && this.keys[i] < hi; i = successor(i)) {
+			action.accept(this.keys[i]);
+		}
+	}
+
+   /**
+    * public String min()
+    *
+    * Returns the info of the item with the smallest key in the index,
+    * or null if the index is empty
+    */
+	// Time complexity  O(logn)
+	public String min() {
+		if (empty()) {
+			return null;
+		}
+		int i = 1;
+		while (2 * i <= this.size) {
+			i = 2 * i;
+		}
+		return this.values[i];
+	}
+
+   /**
+    * public String max()
+    *
+    * Returns the info of the item with the largest key in the index,
+    * or null if the index is empty
+    */
+	// Time complexity  O(logn)
+	public String max() {
+		return empty() ? null : this.values[lastPosition()];
+	}
+
+  /**
+   * public int[] keysToArray()
+   *
+   * Returns a sorted array which contains all keys in the index,
+   * or an empty array if the index is empty.
+   */
+	// Time complexity  O(n)
+	public int[] keysToArray() {
+		int[] keysArray = new int[this.size];
+		int j = 0;
+		for (int i = (empty()) ? 0 : ceilingPosition(Integer.MIN_VALUE); i != 0; i = successor(i)) {
+			keysArray[j++] = this.keys[i];
+		}
+		return keysArray;
+	}
+
+  /**
+   * public String[] infoToArray()
+   *
+   * Returns an array which contains all info in the index,
+   * sorted by their respective keys,
+   * or an empty array if the index is empty.
+   */
+	// Time complexity  O(n)
+	public String[] infoToArray() {
+		String[] stringArray = new String[this.size];
+		int j = 0;
+		for (int i = (empty()) ? 0 : ceilingPosition(Integer.MIN_VALUE); i != 0; i = successor(i)) {
+			stringArray[j++] = this.values[i];
+		}
+		return stringArray;
+	}
+
+	// The position of the smallest key >= k, or 0 if there is none.
+	// Every level adds the comparison as a bit (right son if keys[i] < k), so the loop
+	// has no branch on the keys. At the end i has gone right from the answer and then
+	// only left: dropping the trailing right turns and one more bit gives the answer
+	// Time complexity  O(logn)
+	private int ceilingPosition(int k) {
+		int i = 1;
+		while (i <= this.size) {
+			i = 2 * i + (int)(((long)this.keys[i] - k) >>> 63);
+		}
+		return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+	}
+
+	// The position of the largest key <= k, or 0 if there is none
+	// Time complexity  O(logn)
+	private int floorPosition(int k) {
+		int i = ceilingPosition(k);
+		if (i != 0 && this.keys[i] == k) {
+			return i;
+		}
+		return (i == 0) ? ((empty()) ? 0 : lastPosition()) : predecessor(i);
+	}
+
+	// Time complexity  O(logn)
+	private int lastPosition() {
+		int i = 1;
+		while (2 * i + 1 <= this.size) {
+			i = 2 * i + 1;
+		}
+		return i;
+	}
+
+	// The position of the next key: the leftmost position of the right subtree,
+	// or the first ancestor reached from a left son (0 if there is none)
+	// Time complexity  O(1) amortized, O(logn) WC
+	private int successor(int i) {
+		if (2 * i + 1 <= this.size) {
+			i = 2 * i + 1;
+			while (2 * i <= this.size) {
+				i = 2 * i;
+			}
+			return i;
+		}
+		return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+	}
+
+	// The position of the previous key, symmetric to successor
+	// Time complexity  O(1) amortized, O(logn) WC
+	private int predecessor(int i) {
+		if (2 * i <= this.size) {
+			i = 2 * i;
+			while (2 * i + 1 <= this.size) {
+				i = 2 * i + 1;
+			}
+			return i;
+		}
+		return i >>> (Integer.numberOfTrailingZeros(i) + 1);
+	}
+
+	private Map.Entry<Integer, String> entry(int i) {
+		return (i == 0) ? null : new AbstractMap.SimpleImmutableEntry<>(this.keys[i], this.values[i]);
+	}
+}
@@ -0,0 +1,97 @@
+import java.util.Random;
+
+/**
+ *
+ * HotKeyCacheBenchmark
+ *
+ * The benchmark of the hot key cache of AVLTree (enableCache) under skewed traffic.
+ * The tree holds n keys, and the searches draw the keys from a Zipf distribution:
+ * the key of rank r is searched with probability proportional to 1 / r^s.
+ * The ranks are given to the keys in a random order, so the hot keys are spread over the tree.
+ * Every run searches the same keys, without a cache and then with caches of 1K to 64K entries.
+ *
+ * Usage: java HotKeyCacheBenchmark [keys] [searches] [s]
+ * Prints the average time of a search in nanoseconds and the hit ratio of the cache.
+ *
+ */
+
+public class HotKeyCacheBenchmark {
+
+	private static final int ROUNDS = 5; // the best of the rounds is printed, the first warms up the JIT
+	private static final int[] CAPACITIES = {0, 1 << 10, 1 << 12, 1 << 14, 1 << 16}; // 0 is no cache
+
+	public static void main(String[] args) {
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+		int searches = (args.length > 1) ? Integer.parseInt(args[1]) : 20_000_000;
+		double s = (args.length > 2) ? Double.parseDouble(args[2]) : 0.99;
+		Random random = new Random(42);
+		int[] keys = new int[n];
+		String[] values = new String[n];
+		for (int j = 0; j < n; j++) {
+			keys[j] = 2 * j;
+			values[j] = "info";
+		}
+		int[] searchKeys = zipfKeys(keys, searches, s, random);
+
+		System.out.printf("%d keys, %d searches, Zipf(%.2f)%n", n, searches, s);
+		System.out.printf("%-14s %12s %10s%n", "cache", "search", "hit ratio");
+		for (int capacity : CAPACITIES) {
+			AVLTree tree = AVLTree.fromSorted(keys, values);
+			if (capacity > 0) {
+				tree.enableCache(capacity);
+			}
+			double best = Double.MAX_VALUE;
+			int found = 0;
+			for (int round = 0; round < ROUNDS; round++) {
+				long begin = System.nanoTime();
+				for (int k : searchKeys) {
+					if (tree.search(k) != null) {
+						found++;
+					}
+				}
+				best = Math.min(best, (double)(System.nanoTime() - begin) / searchKeys.length);
+			}
+			String name = (capacity == 0) ? "no cache" : (capacity >> 10) + "K entries";
+			String ratio = (capacity == 0) ? "-" : String.format("%.2f", tree.cacheHitRatio());
+			// found is printed so the searches cannot be optimized away
+			System.out.printf("%-14s %9.0f ns %10s   (%d hits)%n", name, best, ratio, found / ROUNDS);
+		}
+	}
+
+	// Draw count keys by the Zipf distribution with exponent s over the ranks of keys.
+	// A uniform number is looked up in the cumulative distribution by binary search
+	// Time complexity  O(n + count * logn)
+	private static int[] zipfKeys(int[] keys, int count, double s, Random random) {
+		int n = keys.length;
+		double[] cumulative = new double[n];
+		double sum = 0;
+		for (int r = 0; r < n; r++) {
+			sum += 1 / Math.pow(r + 1, s);
+			cumulative[r] = sum;
+		}
+		int[] byRank = keys.clone();
+		for (int j = n - 1; j > 0; j--) { // a random key for every rank
+			int other = random.nextInt(j + 1);
+			int tmp = byRank[j];
+			byRank[j] = byRank[other];
+			byRank[other] = tmp;
+		}
+		int[] res = new int[count];
+		for (int j = 0; j < count; j++) {
+			double u = random.nextDouble() * sum;
+			int lo = 0;
+			int hi = n - 1;
+			while (lo < hi) { // the first rank whose cumulative weight is above u
+				int mid = (lo + hi) >>> 1;
+				if (cumulative[mid] <= u) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			res[j] = byRank[lo];
+		}
+		return res;
+	}
+}
@@ -0,0 +1,684 @@
+import java.util.Arrays;
+
+/**
+ *
+ * IntAVLTree
+ *
+ * An implementation of a AVL Tree with
+ * distinct integer keys and info, with the same operations as AVLTree.
+ *
+ * The nodes are not objects: a node is a slot in parallel primitive arrays
+ * (keys, heights, sizes, left/right/parent indices and info references).
+ * Slot 0 is the virtual node (height -1, size 0) and the slots of deleted
+ * nodes are kept in a free list and reused by insert.
+ * The trees returned by split share the arrays of the original tree.
+ *
+ */
+
+public class IntAVLTree {
+
+	private static final int VIRTUAL = 0; // The slot of the virtual node
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * private static class Store
+	 *
+	 * The parallel arrays which hold the nodes.
+	 * A store may be shared by several trees after split.
+	 */
+	private static class Store {
+
+		private int[] keys;
+		private String[] values;
+		private int[] left;
+		private int[] right;
+		private int[] parent;
+		private byte[] height; // AVL height of a tree of int keys is below 64
+		private int[] size;
+		private int used = 1; // slots [0, used) were handed out, slot 0 is the virtual node
+		private int free = VIRTUAL; // head of the free list, linked through left
+
+		private Store(int capacity) {
+			capacity = Math.max(capacity + 1, 2);
+			this.keys = new int[capacity];
+			this.values = new String[capacity];
+			this.left = new int[capacity];
+			this.right = new int[capacity];
+			this.parent = new int[capacity];
+			this.height = new byte[capacity];
+			this.size = new int[capacity];
+			this.keys[VIRTUAL] = -1;
+			this.height[VIRTUAL] = -1;
+		}
+
+		// Returns the slot of a new leaf, reusing a free slot if there is one
+		// Time complexity  O(1) amortized
+		private int allocate(int key, String value) {
+			int node = this.free;
+			if (node != VIRTUAL) {
+				this.free = this.left[node];
+			}
+			else {
+				if (this.used == this.keys.length) {
+					grow();
+				}
+				node = this.used++;
+			}
+			this.keys[node] = key;
+			this.values[node] = value;
+			this.left[node] = VIRTUAL;
+			this.right[node] = VIRTUAL;
+			this.parent[node] = VIRTUAL;
+			this.height[node] = 0;
+			this.size[node] = 1;
+			return node;
+		}
+
+		// Set the parent of node, unless node is the virtual node:
+		// the parent of slot 0 is never written, so it stays VIRTUAL
+		// Time complexity  O(1)
+		private void setParent(int node, int parentNode) {
+			if (node != VIRTUAL) {
+				this.parent[node] = parentNode;
+			}
+		}
+
+		// Time complexity  O(1)
+		private void release(int node) {
+			this.values[node] = null; // let the info be collected
+			this.left[node] = this.free;
+			this.free = node;
+		}
+
+		// Time complexity  O(n)
+		private void grow() {
+			int capacity = this.keys.length + (this.keys.length >> 1) + 1;
+			this.keys = Arrays.copyOf(this.keys, capacity);
+			this.values = Arrays.copyOf(this.values, capacity);
+			this.left = Arrays.copyOf(this.left, capacity);
+			this.right = Arrays.copyOf(this.right, capacity);
+			this.parent = Arrays.copyOf(this.parent, capacity);
+			this.height = Arrays.copyOf(this.height, capacity);
+			this.size = Arrays.copyOf(this.size, capacity);
+		}
+	}
+
+	private Store store;
+	private int root = VIRTUAL;
+	private int min = VIRTUAL; // slot of the minimal node
+	private int max = VIRTUAL; // slot of the maximal node
+
+	// Empty constructor to create an empty tree
+	public IntAVLTree() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	// A constructor to create an empty tree with room for capacity nodes
+	public IntAVLTree(int capacity) {
+		this.store = new Store(capacity);
+	}
+
+	// A constructor to create an empty tree over an existing store
+	private IntAVLTree(Store store) {
+		this.store = store;
+	}
+
+  /**
+   * public boolean empty()
+   *
+   * returns true if and only if the tree is empty
+   *
+   */
+	// Time complexity  O(1)
+	public boolean empty() {
+		return this.root == VIRTUAL;
+	}
+
+ /**
+   * public String search(int k)
+   *
+   * returns the info of an item with key k if it exists in the tree
+   * otherwise, returns null
+   */
+	// Time complexity  O(logn)
+	public String search(int k) {
+		int node = find(k);
+		return (node == VIRTUAL) ? null : this.store.values[node];
+	}
+
+	// A helping function to return the slot of key k, or VIRTUAL if it is not in the tree
+	// Time complexity  O(logn)
+	private int find(int k) {
+		int[] keys = this.store.keys;
+		int[] left = this.store.left;
+		int[] right = this.store.right;
+		int node = this.root;
+		while (node != VIRTUAL) {
+			int key = keys[node];
+			if (key < k) {
+				node = right[node];
+			}
+			else if (key > k) {
+				node = left[node];
+			}
+			else {
+				return node;
+			}
+		}
+		return VIRTUAL;
+	}
+
+  /**
+   * public int insert(int k, String i)
+   *
+   * inserts an item with key k and info i to the AVL tree.
+   * the tree must remain valid (keep its invariants).
+   * returns the number of rebalancing operations, counted as in AVLTree.insert:
+   * every promotion/demotion and every rotation is one operation.
+   * returns -1 if an item with key k already exists in the tree.
+   */
+	// Time complexity  O(logn)
+	public int insert(int k, String i) {
+
+		Store s = this.store;
+		if (empty()) {
+			this.root = s.allocate(k, i);
+			this.min = this.root;
+			this.max = this.root;
+			return 0;
+		}
+
+		int node = this.root;
+		int parentNode = VIRTUAL;
+		while (node != VIRTUAL) {
+			if (s.keys[node] == k) {
+				return -1;
+			}
+			parentNode = node;
+			node = (k < s.keys[node]) ? s.left[node] : s.right[node];
+		}
+
+		int insertNode = s.allocate(k, i); // might grow the arrays
+		s.parent[insertNode] = parentNode;
+		if (k < s.keys[parentNode]) {
+			s.left[parentNode] = insertNode;
+		}
+		else {
+			s.right[parentNode] = insertNode;
+		}
+		updateSizePath(parentNode, 1);
+		if (k < s.keys[this.min]) {
+			this.min = insertNode;
+		}
+		if (k > s.keys[this.max]) {
+			this.max = insertNode;
+		}
+		return rebalance(parentNode);
+	}
+
+  /**
+   * public int delete(int k)
+   *
+   * deletes an item with key k from the binary tree, if it is there;
+   * the tree must remain valid (keep its invariants).
+   * returns the number of rebalancing operations, counted as in AVLTree.delete.
+   * returns -1 if an item with key k was not found in the tree.
+   */
+	// Time complexity  O(logn)
+	public int delete(int k) {
+
+		Store s = this.store;
+		int node = find(k);
+		if (node == VIRTUAL) {
+			return -1;
+		}
+		int keyHolder = VIRTUAL; // the node which got the key of the leaf we remove
+
+		if (s.left[node] != VIRTUAL && s.right[node] != VIRTUAL) {
+			int successor = s.right[node];
+			while (s.left[successor] != VIRTUAL) {
+				successor = s.left[successor];
+			}
+			s.keys[node] = s.keys[successor]; s.values[node] = s.values[successor];
+			keyHolder = node;
+			node = successor;
+		}
+		// Now node has at most one son, which must be a leaf
+		int child = (s.right[node] != VIRTUAL) ? s.right[node] : s.left[node];
+		if (child != VIRTUAL) {
+			s.keys[node] = s.keys[child]; s.values[node] = s.values[child];
+			keyHolder = node;
+			node = child;
+		}
+
+		int nodeParent = s.parent[node];
+		if (node == this.min) {
+			this.min = (keyHolder != VIRTUAL) ? keyHolder : nodeParent;
+		}
+		if (node == this.max) {
+			this.max = (keyHolder != VIRTUAL) ? keyHolder : nodeParent;
+		}
+		s.release(node);
+		if (nodeParent == VIRTUAL) { // the root was the only node
+			this.root = VIRTUAL;
+			return 0;
+		}
+		if (s.left[nodeParent] == node) {
+			s.left[nodeParent] = VIRTUAL;
+		}
+		else {
+			s.right[nodeParent] = VIRTUAL;
+		}
+		updateSizePath(nodeParent, -1);
+		return rebalance(nodeParent);
+	}
+
+	// A helping function to add delta to the size of every node from node up to the root
+	// Time complexity  O(logn)
+	private void updateSizePath(int node, int delta) {
+		int[] size = this.store.size;
+		int[] parent = this.store.parent;
+		while (node != VIRTUAL) {
+			size[node] += delta;
+			node = parent[node];
+		}
+	}
+
+	// A helping function to fix the heights from node up, rotating where a node is unbalanced.
+	// Stops when the height of a subtree did not change.
+	// Returns the number of height changes plus the number of rotations
+	// Time complexity  O(logn)
+	private int rebalance(int node) {
+		Store s = this.store;
+		int res = 0;
+		while (node != VIRTUAL) {
+			int oldHeight = s.height[node];
+			int balance = s.height[s.right[node]] - s.height[s.left[node]];
+			int top = node;
+			if (balance > 1) {
+				int rotateNode = s.right[node];
+				if (s.height[s.left[rotateNode]] > s.height[s.right[rotateNode]]) {
+					top = s.left[rotateNode];
+					rightRotate(rotateNode);
+					leftRotate(node);
+					res += 2 + updateHeight(node) + updateHeight(rotateNode) + updateHeight(top);
+				}
+				else {
+					top = rotateNode;
+					leftRotate(node);
+					res += 1 + updateHeight(node) + updateHeight(top);
+				}
+			}
+			else if (balance < -1) {
+				int rotateNode = s.left[node];
+				if (s.height[s.right[rotateNode]] > s.height[s.left[rotateNode]]) {
+					top = s.right[rotateNode];
+					leftRotate(rotateNode);
+					rightRotate(node);
+					res += 2 + updateHeight(node) + updateHeight(rotateNode) + updateHeight(top);
+				}
+				else {
+					top = rotateNode;
+					rightRotate(node);
+					res += 1 + updateHeight(node) + updateHeight(top);
+				}
+			}
+			else {
+				res += updateHeight(node);
+			}
+			if (s.height[top] == oldHeight) {
+				break;
+			}
+			node = s.parent[top];
+		}
+		return res;
+	}
+
+	// Recompute the height and size of node from its sons,
+	// returns by how much the height changed
+	// Time complexity  O(1)
+	private int updateHeight(int node) {
+		Store s = this.store;
+		int oldHeight = s.height[node];
+		s.height[node] = (byte)(1 + Math.max(s.height[s.left[node]], s.height[s.right[node]]));
+		s.size[node] = s.size[s.left[node]] + s.size[s.right[node]] + 1;
+		return Math.abs(s.height[node] - oldHeight);
+	}
+
+	// Rotate the right son of node above it. Heights and sizes are not updated
+	// Time complexity  O(1)
+	private void leftRotate(int node) {
+		Store s = this.store;
+		int rotateNode = s.right[node];
+		int nodeParent = s.parent[node];
+		s.right[node] = s.left[rotateNode];
+		s.setParent(s.left[rotateNode], node);
+		s.left[rotateNode] = node;
+		s.parent[node] = rotateNode;
+		replaceSon(nodeParent, node, rotateNode);
+	}
+
+	// Rotate the left son of node above it. Heights and sizes are not updated
+	// Time complexity  O(1)
+	private void rightRotate(int node) {
+		Store s = this.store;
+		int rotateNode = s.left[node];
+		int nodeParent = s.parent[node];
+		s.left[node] = s.right[rotateNode];
+		s.setParent(s.right[rotateNode], node);
+		s.right[rotateNode] = node;
+		s.parent[node] = rotateNode;
+		replaceSon(nodeParent, node, rotateNode);
+	}
+
+	// Put newSon in the place of oldSon under nodeParent (or as the root)
+	// Time complexity  O(1)
+	private void replaceSon(int nodeParent, int oldSon, int newSon) {
+		Store s = this.store;
+		s.parent[newSon] = nodeParent;
+		if (nodeParent == VIRTUAL) {
+			this.root = newSon;
+		}
+		else if (s.left[nodeParent] == oldSon) {
+			s.left[nodeParent] = newSon;
+		}
+		else {
+			s.right[nodeParent] = newSon;
+		}
+	}
+
+   /**
+    * public String min()
+    *
+    * Returns the info of the item with the smallest key in the tree,
+    * or null if the tree is empty
+    */
+	// Time complexity  O(1)
+	public String min() {
+		return (empty()) ? null : this.store.values[this.min];
+	}
+
+   /**
+    * public String max()
+    *
+    * Returns the info of the item with the largest key in the tree,
+    * or null if the tree is empty
+    */
+	// Time complexity  O(1)
+	public String max() {
+		return (empty()) ? null : this.store.values[this.max];
+	}
+
+  /**
+   * public int[] keysToArray()
+   *
+   * Returns a sorted array which contains all keys in the tree,
+   * or an empty array if the tree is empty.
+   */
+	// Time complexity  O(n)
+	public int[] keysToArray() {
+		int[] keysArray = new int[size()];
+		int i = 0;
+		for (int node = this.min; i < keysArray.length; node = successor(node)) {
+			keysArray[i++] = this.store.keys[node];
+		}
+		return keysArray;
+	}
+
+  /**
+   * public String[] infoToArray()
+   *
+   * Returns an array which contains all info in the tree,
+   * sorted by their respective keys,
+   * or an empty array if the tree is empty.
+   */
+	// Time complexity  O(n)
+	public String[] infoToArray() {
+		String[] stringArray = new String[size()];
+		int i = 0;
+		for (int node = this.min; i < stringArray.length; node = successor(node)) {
+			stringArray[i++] = this.store.values[node];
+		}
+		return stringArray;
+	}
+
+	// Returns the slot with the next key, or VIRTUAL if node is the maximal node
+	// Time complexity  O(logn)
+	private int successor(int node) {
+		Store s = this.store;
+		if (s.right[node] != VIRTUAL) {
+			node = s.right[node];
+			while (s.left[node] != VIRTUAL) {
+				node = s.left[node];
+			}
+			return node;
+		}
+		while (s.parent[node] != VIRTUAL && s.right[s.parent[node]] == node) {
+			node = s.parent[node];
+		}
+		return s.parent[node];
+	}
+
+	// Returns the slot with the previous key, or VIRTUAL if node is the minimal node
+	// Time complexity  O(logn)
+	private int predecessor(int node) {
+		Store s = this.store;
+		if (s.left[node] != VIRTUAL) {
+			node = s.left[node];
+			while (s.right[node] != VIRTUAL) {
+				node = s.right[node];
+			}
+			return node;
+		}
+		while (s.parent[node] != VIRTUAL && s.left[s.parent[node]] == node) {
+			node = s.parent[node];
+		}
+		return s.parent[node];
+	}
+
+   /**
+    * public int size()
+    *
+    * Returns the number of nodes in the tree.
+    */
+	// Time complexity  O(1)
+	public int size() {
+		return this.store.size[this.root];
+	}
+
+     /**
+    * public IntAVLTree[] split(int x)
+    *
+    * splits the tree into 2 trees according to the key x.
+    * Returns an array [t1, t2] with two trees. keys(t1) < x < keys(t2).
+    * The two trees share the arrays of this tree, which becomes empty.
+    * x does not have to be in the tree, and the tree might be empty.
+	  * precondition: none
+    * postcondition: none
+    */
+	// Time complexity  O(logn)
+	public IntAVLTree[] split(int x) {
+		Store s = this.store;
+		// Walk down to x, or to the virtual node where x would be,
+		// keeping the last nodes passed on each side of x
+		int xNode = this.root;
+		int xParent = VIRTUAL;
+		int pred = VIRTUAL;
+		int succ = VIRTUAL;
+		while (xNode != VIRTUAL && s.keys[xNode] != x) {
+			xParent = xNode;
+			if (x < s.keys[xNode]) {
+				succ = xNode;
+				xNode = s.left[xNode];
+			}
+			else {
+				pred = xNode;
+				xNode = s.right[xNode];
+			}
+		}
+		IntAVLTree t1 = subTree(VIRTUAL);
+		IntAVLTree t2 = subTree(VIRTUAL);
+		if (xNode != VIRTUAL) {
+			// The neighbours of x are in its subtrees if they are not empty
+			if (s.left[xNode] != VIRTUAL) {
+				pred = predecessor(xNode);
+			}
+			if (s.right[xNode] != VIRTUAL) {
+				succ = successor(xNode);
+			}
+			t1 = subTree(s.left[xNode]);
+			t2 = subTree(s.right[xNode]);
+			xParent = s.parent[xNode];
+		}
+
+		while (xParent != VIRTUAL) {
+			// join changes the parent of xParent, so keep it aside
+			int nextParent = s.parent[xParent];
+			if (x < s.keys[xParent]) {
+				t2.joinNode(xParent, subTree(s.right[xParent]));
+			}
+			else {
+				t1.joinNode(xParent, subTree(s.left[xParent]));
+			}
+			xParent = nextParent;
+		}
+		if (xNode != VIRTUAL) {
+			s.release(xNode);
+		}
+		// The extremes of the parts are the extremes of the tree and the neighbours of x
+		t1.min = (t1.empty()) ? VIRTUAL : this.min; t1.max = pred;
+		t2.min = succ; t2.max = (t2.empty()) ? VIRTUAL : this.max;
+		this.root = VIRTUAL; this.min = VIRTUAL; this.max = VIRTUAL;
+		return new IntAVLTree[]{t1, t2};
+	}
+
+	// A helping function to make a tree of a subtree in the same store,
+	// without looking for its extremes
+	// Time complexity  O(1)
+	private IntAVLTree subTree(int node) {
+		IntAVLTree tree = new IntAVLTree(this.store);
+		if (node != VIRTUAL) {
+			this.store.parent[node] = VIRTUAL;
+			tree.root = node;
+		}
+		return tree;
+	}
+
+   /**
+    * public int join(int k, String i, IntAVLTree t)
+    *
+    * joins t and a new item with key k and info i with the tree.
+    * If t does not share the arrays of this tree its items are copied in first.
+    * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	  * precondition: keys(k,t) < keys() or keys(k,t) > keys(). t/tree might be empty (rank = -1).
+    * postcondition: none
+    */
+	// Time complexity  O(logn), O(|t|) when t has its own arrays
+	public int join(int k, String i, IntAVLTree t) {
+		if (t.store != this.store) {
+			t = copyIn(t);
+		}
+		return joinNode(this.store.allocate(k, i), t);
+	}
+
+	// The join of AVLTree over slots: x is attached at the spine of the higher tree
+	// where the height matches the lower tree, then the path is rebalanced
+	// Time complexity  O(logn)
+	private int joinNode(int x, IntAVLTree t) {
+		Store s = this.store;
+		int tHeight = s.height[t.root];
+		int thisHeight = s.height[this.root];
+		int diffAbs = Math.abs(tHeight - thisHeight);
+
+		// Find which tree holds the keys smaller than x
+		boolean tIsHigher = (!t.empty()) ? s.keys[t.root] > s.keys[x] : (!empty() && s.keys[this.root] < s.keys[x]);
+		IntAVLTree lowKeysTree = (tIsHigher) ? this : t;
+		IntAVLTree highKeysTree = (tIsHigher) ? t : this;
+		int newMin = (lowKeysTree.empty()) ? x : lowKeysTree.min;
+		int newMax = (highKeysTree.empty()) ? x : highKeysTree.max;
+		int lowKeysRoot = lowKeysTree.root;
+		int highKeysRoot = highKeysTree.root;
+
+		IntAVLTree highRankTree = (tHeight > thisHeight) ? t : this;
+		int lowRank = Math.min(tHeight, thisHeight);
+		s.height[x] = (byte)(1 + lowRank);
+
+		if (tHeight == thisHeight) { // x becomes the root (also when both trees are empty)
+			s.left[x] = lowKeysRoot; s.setParent(lowKeysRoot, x);
+			s.right[x] = highKeysRoot; s.setParent(highKeysRoot, x);
+			s.parent[x] = VIRTUAL;
+			s.size[x] = s.size[lowKeysRoot] + s.size[highKeysRoot] + 1;
+			this.root = x;
+			this.min = newMin; this.max = newMax;
+			return ++diffAbs;
+		}
+		int tmpNode = highRankTree.root;
+		int tmpParent = VIRTUAL;
+		if (highRankTree == highKeysTree) {
+			while (s.height[tmpNode] > lowRank) {
+				tmpParent = tmpNode;
+				tmpNode = s.left[tmpNode];
+			}
+			s.left[tmpParent] = x;
+			s.right[x] = tmpNode; s.left[x] = lowKeysRoot;
+		}
+		else {
+			while (s.height[tmpNode] > lowRank) {
+				tmpParent = tmpNode;
+				tmpNode = s.right[tmpNode];
+			}
+			s.right[tmpParent] = x;
+			s.right[x] = highKeysRoot; s.left[x] = tmpNode;
+		}
+		s.parent[x] = tmpParent;
+		s.setParent(s.left[x], x);
+		s.setParent(s.right[x], x);
+		// x's subtree is new, so update the sizes from x up to the root
+		for (int sizeNode = x; sizeNode != VIRTUAL; sizeNode = s.parent[sizeNode]) {
+			s.size[sizeNode] = s.size[s.left[sizeNode]] + s.size[s.right[sizeNode]] + 1;
+		}
+		// set the root before balancing, since rotations may replace it
+		this.root = highRankTree.root;
+		rebalance(tmpParent);
+		this.min = newMin; this.max = newMax;
+		return ++diffAbs;
+	}
+
+	// A helping function to copy the items of t into a balanced tree in this store
+	// Time complexity  O(|t|)
+	private IntAVLTree copyIn(IntAVLTree t) {
+		IntAVLTree copy = new IntAVLTree(this.store);
+		if (!t.empty()) {
+			int[] keysArray = t.keysToArray();
+			String[] stringArray = t.infoToArray();
+			copy.root = copy.build(keysArray, stringArray, 0, keysArray.length - 1);
+			this.store.parent[copy.root] = VIRTUAL;
+			copy.min = copy.root;
+			copy.max = copy.root;
+			while (this.store.left[copy.min] != VIRTUAL) {
+				copy.min = this.store.left[copy.min];
+			}
+			while (this.store.right[copy.max] != VIRTUAL) {
+				copy.max = this.store.right[copy.max];
+			}
+		}
+		return copy;
+	}
+
+	// Build a perfectly balanced subtree of the sorted items in [lo, hi], returns its root
+	// Time complexity  O(hi - lo), recursion depth O(log(hi - lo))
+	private int build(int[] keysArray, String[] stringArray, int lo, int hi) {
+		if (lo > hi) {
+			return VIRTUAL;
+		}
+		int mid = (lo + hi) >>> 1;
+		int leftNode = build(keysArray, stringArray, lo, mid - 1);
+		int rightNode = build(keysArray, stringArray, mid + 1, hi);
+		Store s = this.store; // read after the recursive calls, allocate may grow the arrays
+		int node = s.allocate(keysArray[mid], stringArray[mid]);
+		s.left[node] = leftNode; s.setParent(leftNode, node);
+		s.right[node] = rightNode; s.setParent(rightNode, node);
+		updateHeight(node);
+		return node;
+	}
+}
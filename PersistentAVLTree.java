@@ -0,0 +1,367 @@
+/**
+ *
+ * PersistentAVLTree
+ *
+ * An implementation of a persistent AVL Tree with
+ * distinct integer keys and info.
+ *
+ * A tree is never changed: insert, delete, split and join return new trees,
+ * which copy only the nodes on the changed path and share all the other
+ * subtrees with the old tree. So every tree is a snapshot which stays valid
+ * while newer versions are made, and old versions are collected once they
+ * are not referenced.
+ *
+ */
+
+public class PersistentAVLTree {
+
+	/**
+	 * private static final class Node
+	 *
+	 * An immutable node. There are no parent pointers, since
+	 * a node may be shared by many trees.
+	 */
+	private static final class Node {
+
+		private final int key;
+		private final String value;
+		private final Node left;
+		private final Node right;
+		private final int height;
+		private final int size;
+
+		private Node(int key, String value, Node left, Node right) {
+			this.key = key;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+			this.height = 1 + Math.max(height(left), height(right));
+			this.size = size(left) + size(right) + 1;
+		}
+	}
+
+	private final Node root; // null for the empty tree
+
+	// Empty constructor to create an empty tree
+	public PersistentAVLTree() {
+		this(null);
+	}
+
+	private PersistentAVLTree(Node root) {
+		this.root = root;
+	}
+
+  /**
+   * public boolean empty()
+   *
+   * returns true if and only if the tree is empty
+   */
+	// Time complexity  O(1)
+	public boolean empty() {
+		return this.root == null;
+	}
+
+   /**
+    * public int size()
+    *
+    * Returns the number of nodes in the tree.
+    */
+	// Time complexity  O(1)
+	public int size() {
+		return size(this.root);
+	}
+
+   /**
+    * public PersistentAVLTree snapshot()
+    *
+    * Returns a view of the tree which does not see later changes.
+    * A tree never changes, so this is the tree itself.
+    */
+	// Time complexity  O(1)
+	public PersistentAVLTree snapshot() {
+		return this;
+	}
+
+ /**
+   * public String search(int k)
+   *
+   * returns the info of an item with key k if it exists in the tree
+   * otherwise, returns null
+   */
+	// Time complexity  O(logn)
+	public String search(int k) {
+		Node node = this.root;
+		while (node != null) {
+			if (node.key < k) {
+				node = node.right;
+			}
+			else if (node.key > k) {
+				node = node.left;
+			}
+			else {
+				return node.value;
+			}
+		}
+		return null;
+	}
+
+  /**
+   * public PersistentAVLTree insert(int k, String i)
+   *
+   * Returns a tree with the items of this tree and the item (k, i),
+   * or this tree if an item with key k already exists in it.
+   */
+	// Time complexity  O(logn)
+	public PersistentAVLTree insert(int k, String i) {
+		Node newRoot = insert(this.root, k, i);
+		return (newRoot == this.root) ? this : new PersistentAVLTree(newRoot);
+	}
+
+	// Returns the subtree with (k, i) inserted, or node itself if k is already there
+	// Time complexity  O(logn)
+	private static Node insert(Node node, int k, String i) {
+		if (node == null) {
+			return new Node(k, i, null, null);
+		}
+		if (k < node.key) {
+			Node newLeft = insert(node.left, k, i);
+			return (newLeft == node.left) ? node : balance(node.key, node.value, newLeft, node.right);
+		}
+		if (k > node.key) {
+			Node newRight = insert(node.right, k, i);
+			return (newRight == node.right) ? node : balance(node.key, node.value, node.left, newRight);
+		}
+		return node;
+	}
+
+  /**
+   * public PersistentAVLTree delete(int k)
+   *
+   * Returns a tree with the items of this tree except the item with key k,
+   * or this tree if there is no item with key k.
+   */
+	// Time complexity  O(logn)
+	public PersistentAVLTree delete(int k) {
+		Node newRoot = delete(this.root, k);
+		return (newRoot == this.root) ? this : new PersistentAVLTree(newRoot);
+	}
+
+	// Returns the subtree without k, or node itself if k is not there
+	// Time complexity  O(logn)
+	private static Node delete(Node node, int k) {
+		if (node == null) {
+			return null;
+		}
+		if (k < node.key) {
+			Node newLeft = delete(node.left, k);
+			return (newLeft == node.left) ? node : balance(node.key, node.value, newLeft, node.right);
+		}
+		if (k > node.key) {
+			Node newRight = delete(node.right, k);
+			return (newRight == node.right) ? node : balance(node.key, node.value, node.left, newRight);
+		}
+		if (node.left == null) {
+			return node.right;
+		}
+		if (node.right == null) {
+			return node.left;
+		}
+		// The successor takes the place of the deleted node
+		Node successor = node.right;
+		while (successor.left != null) {
+			successor = successor.left;
+		}
+		return balance(successor.key, successor.value, node.left, deleteMin(node.right));
+	}
+
+	// Time complexity  O(logn)
+	private static Node deleteMin(Node node) {
+		if (node.left == null) {
+			return node.right;
+		}
+		return balance(node.key, node.value, deleteMin(node.left), node.right);
+	}
+
+   /**
+    * public String min()
+    *
+    * Returns the info of the item with the smallest key in the tree,
+    * or null if the tree is empty
+    */
+	// Time complexity  O(logn)
+	public String min() {
+		Node node = this.root;
+		if (node == null) {
+			return null;
+		}
+		while (node.left != null) {
+			node = node.left;
+		}
+		return node.value;
+	}
+
+   /**
+    * public String max()
+    *
+    * Returns the info of the item with the largest key in the tree,
+    * or null if the tree is empty
+    */
+	// Time complexity  O(logn)
+	public String max() {
+		Node node = this.root;
+		if (node == null) {
+			return null;
+		}
+		while (node.right != null) {
+			node = node.right;
+		}
+		return node.value;
+	}
+
+  /**
+   * public int[] keysToArray()
+   *
+   * Returns a sorted array which contains all keys in the tree,
+   * or an empty array if the tree is empty.
+   */
+	// Time complexity  O(n)
+	public int[] keysToArray() {
+		int[] keysArray = new int[size()];
+		treeToArray(keysArray, null);
+		return keysArray;
+	}
+
+  /**
+   * public String[] infoToArray()
+   *
+   * Returns an array which contains all info in the tree,
+   * sorted by their respective keys,
+   * or an empty array if the tree is empty.
+   */
+	// Time complexity  O(n)
+	public String[] infoToArray() {
+		String[] stringArray = new String[size()];
+		treeToArray(null, stringArray);
+		return stringArray;
+	}
+
+	// A helping function to fill the keys or the info in order.
+	// There are no parent pointers, so the path is kept in a stack of the tree height
+	// Time complexity  O(n)
+	private void treeToArray(int[] keysArray, String[] stringArray) {
+		Node[] stack = new Node[height(this.root) + 1];
+		int top = 0;
+		int i = 0;
+		Node node = this.root;
+		while (node != null || top > 0) {
+			while (node != null) {
+				stack[top++] = node;
+				node = node.left;
+			}
+			node = stack[--top];
+			if (keysArray != null) {
+				keysArray[i++] = node.key;
+			}
+			else {
+				stringArray[i++] = node.value;
+			}
+			node = node.right;
+		}
+	}
+
+     /**
+    * public PersistentAVLTree[] split(int x)
+    *
+    * Returns an array [t1, t2] with two trees. keys(t1) < x < keys(t2).
+    * The item with key x (if there is one) is in neither tree.
+    * This tree does not change.
+	  * precondition: none
+    */
+	// Time complexity  O(logn)
+	public PersistentAVLTree[] split(int x) {
+		Node[] parts = split(this.root, x);
+		return new PersistentAVLTree[]{new PersistentAVLTree(parts[0]), new PersistentAVLTree(parts[1])};
+	}
+
+	// Split the subtree by x, joining the subtrees hanging off the search path on the way back
+	// Time complexity  O(logn)
+	private static Node[] split(Node node, int x) {
+		if (node == null) {
+			return new Node[2];
+		}
+		if (x < node.key) {
+			Node[] parts = split(node.left, x);
+			parts[1] = join(parts[1], node.key, node.value, node.right);
+			return parts;
+		}
+		if (x > node.key) {
+			Node[] parts = split(node.right, x);
+			parts[0] = join(node.left, node.key, node.value, parts[0]);
+			return parts;
+		}
+		return new Node[]{node.left, node.right};
+	}
+
+   /**
+    * public PersistentAVLTree join(int k, String i, PersistentAVLTree t)
+    *
+    * Returns a tree with the items of this tree, of t and (k, i).
+    * This tree and t do not change.
+	  * precondition: keys(k,t) < keys() or keys(k,t) > keys(). t/tree might be empty.
+    */
+	// Time complexity  O(|tree.rank - t.rank| + 1)
+	public PersistentAVLTree join(int k, String i, PersistentAVLTree t) {
+		// Find which tree holds the keys smaller than k
+		boolean tIsHigher = (!t.empty()) ? t.root.key > k : (!empty() && this.root.key < k);
+		Node lowRoot = (tIsHigher) ? this.root : t.root;
+		Node highRoot = (tIsHigher) ? t.root : this.root;
+		return new PersistentAVLTree(join(lowRoot, k, i, highRoot));
+	}
+
+	// Join two subtrees and a middle item: go down the spine of the higher subtree
+	// until the heights match, then rebalance on the way back
+	// Time complexity  O(|height(left) - height(right)| + 1)
+	private static Node join(Node left, int k, String i, Node right) {
+		if (height(left) > height(right) + 1) {
+			return balance(left.key, left.value, left.left, join(left.right, k, i, right));
+		}
+		if (height(right) > height(left) + 1) {
+			return balance(right.key, right.value, join(left, k, i, right.left), right.right);
+		}
+		return new Node(k, i, left, right);
+	}
+
+	// Returns a new node of (k, i) over left and right, rotated if the heights
+	// of left and right differ by 2
+	// Time complexity  O(1)
+	private static Node balance(int k, String i, Node left, Node right) {
+		int balance = height(right) - height(left);
+		if (balance > 1) {
+			if (height(right.left) > height(right.right)) { // double rotation
+				Node rotateNode = right.left;
+				return new Node(rotateNode.key, rotateNode.value,
+						new Node(k, i, left, rotateNode.left),
+						new Node(right.key, right.value, rotateNode.right, right.right));
+			}
+			return new Node(right.key, right.value, new Node(k, i, left, right.left), right.right);
+		}
+		if (balance < -1) {
+			if (height(left.right) > height(left.left)) { // double rotation
+				Node rotateNode = left.right;
+				return new Node(rotateNode.key, rotateNode.value,
+						new Node(left.key, left.value, left.left, rotateNode.left),
+						new Node(k, i, rotateNode.right, right));
+			}
+			return new Node(left.key, left.value, left.left, new Node(k, i, left.right, right));
+		}
+		return new Node(k, i, left, right);
+	}
+
+	private static int height(Node node) {
+		return (node == null) ? -1 : node.height;
+	}
+
+	private static int size(Node node) {
+		return (node == null) ? 0 : node.size;
+	}
+}
@@ -0,0 +1,120 @@
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ *
+ * PersistentAVLTreeBenchmark
+ *
+ * The benchmark of PersistentAVLTree against the mutable AVLTree.
+ * Both trees get the same random keys one insert at a time, then the same random searches
+ * (half of them miss). Then more keys are inserted into the persistent tree while every
+ * version is kept, and the bytes allocated per insert are the memory of a retained version.
+ * The mutable tree is measured the same way for comparison, where nothing is retained.
+ * The allocated bytes are read from the HotSpot thread counters, and are not printed
+ * on a JVM without them.
+ *
+ * Usage: java PersistentAVLTreeBenchmark [keys] [searches] [versions]
+ * Prints the throughput of insert and search in millions of operations per second,
+ * and the bytes allocated per insert.
+ *
+ */
+
+public class PersistentAVLTreeBenchmark {
+
+	private static final int ROUNDS = 3; // the best of the rounds is printed, the first warms up the JIT
+
+	public static void main(String[] args) {
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+		int searches = (args.length > 1) ? Integer.parseInt(args[1]) : 2_000_000;
+		int versions = (args.length > 2) ? Integer.parseInt(args[2]) : 100_000;
+		Random random = new Random(42);
+		int[] keys = new int[n];
+		for (int j = 0; j < n; j++) {
+			keys[j] = 2 * random.nextInt(Integer.MAX_VALUE / 2); // even keys, the odd keys miss
+		}
+		int[] searchKeys = new int[searches];
+		for (int j = 0; j < searches; j++) {
+			searchKeys[j] = (random.nextBoolean()) ? keys[random.nextInt(n)] : 2 * random.nextInt(Integer.MAX_VALUE / 2) + 1;
+		}
+		int[] newKeys = new int[versions];
+		for (int j = 0; j < versions; j++) {
+			newKeys[j] = 2 * random.nextInt(Integer.MAX_VALUE / 2) + 1;
+		}
+
+		System.out.printf("%d keys, %d searches, %d retained versions%n", n, searches, versions);
+		System.out.printf("%-20s %12s %12s %22s%n", "tree", "insert", "search", "bytes per insert");
+
+		double bestInsert = 0;
+		double bestSearch = 0;
+		AVLTree mutable = null;
+		int found = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			mutable = new AVLTree();
+			long begin = System.nanoTime();
+			for (int k : keys) {
+				mutable.insert(k, "info");
+			}
+			bestInsert = Math.max(bestInsert, mops(keys.length, System.nanoTime() - begin));
+			begin = System.nanoTime();
+			for (int k : searchKeys) {
+				if (mutable.search(k) != null) {
+					found++;
+				}
+			}
+			bestSearch = Math.max(bestSearch, mops(searchKeys.length, System.nanoTime() - begin));
+		}
+		long allocated = allocatedBytes();
+		for (int k : newKeys) {
+			mutable.insert(k, "info");
+		}
+		report("AVLTree", bestInsert, bestSearch, allocated, newKeys.length, found);
+
+		bestInsert = 0;
+		bestSearch = 0;
+		PersistentAVLTree persistent = null;
+		found = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			persistent = new PersistentAVLTree();
+			long begin = System.nanoTime();
+			for (int k : keys) {
+				persistent = persistent.insert(k, "info");
+			}
+			bestInsert = Math.max(bestInsert, mops(keys.length, System.nanoTime() - begin));
+			begin = System.nanoTime();
+			for (int k : searchKeys) {
+				if (persistent.search(k) != null) {
+					found++;
+				}
+			}
+			bestSearch = Math.max(bestSearch, mops(searchKeys.length, System.nanoTime() - begin));
+		}
+		PersistentAVLTree[] retained = new PersistentAVLTree[newKeys.length]; // every version stays reachable
+		allocated = allocatedBytes();
+		for (int j = 0; j < newKeys.length; j++) {
+			persistent = persistent.insert(newKeys[j], "info");
+			retained[j] = persistent;
+		}
+		report("PersistentAVLTree", bestInsert, bestSearch, allocated, newKeys.length, found + retained[retained.length - 1].size());
+	}
+
+	private static double mops(int operations, long nanos) {
+		return operations * 1000.0 / nanos;
+	}
+
+	// Print a line of the table. since is the allocation counter before the inserts
+	// whose bytes are printed; found is printed so the work cannot be optimized away
+	private static void report(String name, double insert, double search, long since, int inserts, int found) {
+		long allocated = allocatedBytes();
+		String bytes = (since < 0 || allocated < 0) ? "-" : String.format("%.0f", (double)(allocated - since) / inserts);
+		System.out.printf("%-20s %7.2f Mops %7.2f Mops %22s   (%d)%n", name, insert, search, bytes, found);
+	}
+
+	// The bytes allocated by this thread so far, or -1 if the JVM does not count them
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
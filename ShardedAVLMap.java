@@ -0,0 +1,564 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ *
+ * ShardedAVLMap
+ *
+ * A map of distinct integer keys and info which can be shared by threads.
+ *
+ * The key space is cut into ranges (shards), each held by its own AVLTree
+ * behind its own read-write lock, so threads working on different shards
+ * do not wait for each other.
+ * A key is routed to its shard in O(1) by a table indexed by the high bits of the key:
+ * every shard is a run of table entries, so shard bounds are multiples of the
+ * width of an entry. The table is refined (twice as many entries) when a shard
+ * of a single entry must be split, up to MAX_TABLE_BITS bits.
+ *
+ * A rebalancer thread counts the operations of every shard and, every
+ * rebalanceIntervalMillis, splits (AVLTree.splitInto) the shards which are larger
+ * than maxShardSize or much busier than the average, at their median key,
+ * and joins (AVLTree.join) neighbouring shards which are small and cold.
+ * A shard is never changed in place: it is replaced by new shards under its write lock,
+ * and an operation which finds its shard replaced routes its key again.
+ * The new shards are routed to while their own write locks are held, so an operation
+ * sees their trees fully built.
+ *
+ * Range scans visit the shards in key order and hold one read lock at a time,
+ * so each shard is read consistently but the scan is not a snapshot of the whole map.
+ *
+ */
+
+public class ShardedAVLMap implements AutoCloseable {
+
+	public static final int DEFAULT_SHARDS = 16;
+	public static final int DEFAULT_MAX_SHARD_SIZE = 1 << 16;
+	public static final long DEFAULT_REBALANCE_MILLIS = 100;
+
+	private static final int MAX_TABLE_BITS = 20; // the finest shard covers 4096 keys
+	private static final int MAX_SHARDS = 1 << 12;
+	private static final int HOT_FACTOR = 4; // a shard with 4 times the average operations is hot
+	private static final long MIN_HOT_OPS = 1 << 12; // fewer operations in a pass say nothing about heat
+	private static final int MIN_SPLIT_SIZE = 64; // smaller hot shards are not split
+
+	/**
+	 * private static final class Shard
+	 *
+	 * The keys in [lo, hi) of the map. The bounds never change, a rebalanced shard
+	 * is retired and replaced.
+	 */
+	private static final class Shard {
+
+		private final long lo;
+		private final long hi; // long, so the last shard can hold Integer.MAX_VALUE
+		private final AVLTree tree;
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		private final LongAdder ops = new LongAdder(); // since the last rebalancing pass
+		private boolean retired; // guarded by lock
+		private long lastOps = -1; // of the last pass, -1 for a shard made in it
+
+		private Shard(long lo, long hi, AVLTree tree) {
+			this.lo = lo;
+			this.hi = hi;
+			this.tree = tree;
+		}
+	}
+
+	/**
+	 * private static final class Routing
+	 *
+	 * The routing table: entry j holds the shard of the keys
+	 * Integer.MIN_VALUE + j * 2^shift up to the next entry.
+	 */
+	private static final class Routing {
+
+		private final int shift;
+		private final Shard[] table;
+
+		private Routing(int shift, Shard[] table) {
+			this.shift = shift;
+			this.table = table;
+		}
+
+		// Time complexity  O(1)
+		private int entry(long k) {
+			return (int)((k - Integer.MIN_VALUE) >>> this.shift);
+		}
+
+		// The smallest key of entry j, as a long since it may be Integer.MAX_VALUE + 1
+		private long start(long j) {
+			return (j << this.shift) + Integer.MIN_VALUE;
+		}
+	}
+
+	private final int maxShardSize;
+	private final int minShards;
+	private volatile Routing routing; // entries are written under the write lock of the shard they replace
+	private final ReentrantLock rebalanceLock = new ReentrantLock(); // one rebalancing pass at a time
+	private final LongAdder size = new LongAdder();
+	private final Thread rebalancer;
+	private volatile boolean closed;
+
+	// A constructor with DEFAULT_SHARDS shards, DEFAULT_MAX_SHARD_SIZE and DEFAULT_REBALANCE_MILLIS
+	public ShardedAVLMap() {
+		this(DEFAULT_SHARDS, DEFAULT_MAX_SHARD_SIZE, DEFAULT_REBALANCE_MILLIS);
+	}
+
+  /**
+   * public ShardedAVLMap(int shards, int maxShardSize, long rebalanceIntervalMillis)
+   *
+   * An empty map of shards equal key ranges. The map never has fewer shards.
+   * If rebalanceIntervalMillis is 0 there is no rebalancer thread,
+   * and the shards are rebalanced only by rebalance().
+   * precondition: shards is a power of 2 and at most 2^20, maxShardSize >= 2
+   */
+	public ShardedAVLMap(int shards, int maxShardSize, long rebalanceIntervalMillis) {
+		this.maxShardSize = maxShardSize;
+		this.minShards = shards;
+		int shift = 32 - Integer.numberOfTrailingZeros(shards);
+		Shard[] table = new Shard[shards];
+		this.routing = new Routing(shift, table);
+		for (int j = 0; j < shards; j++) {
+			table[j] = new Shard(this.routing.start(j), this.routing.start(j + 1), new AVLTree());
+		}
+		if (rebalanceIntervalMillis > 0) {
+			this.rebalancer = new Thread(() -> rebalanceLoop(rebalanceIntervalMillis), "ShardedAVLMap-rebalancer");
+			this.rebalancer.setDaemon(true);
+			this.rebalancer.start();
+		}
+		else {
+			this.rebalancer = null;
+		}
+	}
+
+ /**
+   * public String search(int k)
+   *
+   * returns the info of an item with key k if it exists in the map
+   * otherwise, returns null
+   */
+	// Time complexity  O(1) routing + O(logn) in the shard
+	public String search(int k) {
+		Shard shard = lockShard(k, false);
+		try {
+			return shard.tree.search(k);
+		}
+		finally {
+			shard.lock.readLock().unlock();
+		}
+	}
+
+  /**
+   * public int insert(int k, String i)
+   *
+   * inserts an item with key k and info i, as AVLTree.insert:
+   * returns the number of rebalancing operations of the shard,
+   * or -1 if an item with key k already exists in the map.
+   */
+	// Time complexity  O(1) routing + O(logn) in the shard
+	public int insert(int k, String i) {
+		Shard shard = lockShard(k, true);
+		try {
+			int res = shard.tree.insert(k, i);
+			if (res != -1) {
+				this.size.increment();
+			}
+			return res;
+		}
+		finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+
+  /**
+   * public String put(int k, String i)
+   *
+   * Sets the info of key k to i, as AVLTree.put.
+   * Returns the previous info, or null if k was not in the map.
+   */
+	// Time complexity  O(1) routing + O(logn) in the shard
+	public String put(int k, String i) {
+		Shard shard = lockShard(k, true);
+		try {
+			int before = shard.tree.size();
+			String previous = shard.tree.put(k, i);
+			this.size.add(shard.tree.size() - before);
+			return previous;
+		}
+		finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+
+  /**
+   * public int delete(int k)
+   *
+   * deletes the item with key k, as AVLTree.delete:
+   * returns the number of rebalancing operations of the shard,
+   * or -1 if there is no item with key k in the map.
+   */
+	// Time complexity  O(1) routing + O(logn) in the shard
+	public int delete(int k) {
+		Shard shard = lockShard(k, true);
+		try {
+			int res = shard.tree.delete(k);
+			if (res != -1) {
+				this.size.decrement();
+			}
+			return res;
+		}
+		finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+
+   /**
+    * public int size()
+    *
+    * Returns the number of items in the map
+    * (exact while no change is running).
+    */
+	// Time complexity  O(number of threads)
+	public int size() {
+		return this.size.intValue();
+	}
+
+  /**
+   * public boolean empty()
+   *
+   * returns true if and only if the map is empty (while no change is running)
+   */
+	// Time complexity  O(number of threads)
+	public boolean empty() {
+		return size() == 0;
+	}
+
+  /**
+   * public void forEachInRange(int lo, int hi, BiConsumer<Integer, String> action)
+   *
+   * Runs action on every item with lo <= key < hi in increasing key order.
+   * The items of a shard are copied under its read lock, and action runs
+   * after the lock is released, so action may change the map.
+   */
+	// Time complexity  O(logn + number of shards and items in the range)
+	public void forEachInRange(int lo, int hi, BiConsumer<Integer, String> action) {
+		scan(lo, hi, action);
+	}
+
+  /**
+   * public int[] keysToArray()
+   *
+   * Returns a sorted array which contains all keys in the map,
+   * or an empty array if the map is empty.
+   */
+	// Time complexity  O(n)
+	public int[] keysToArray() {
+		IntStream.Builder keys = IntStream.builder();
+		scan(Integer.MIN_VALUE, 1L + Integer.MAX_VALUE, (k, v) -> keys.add(k));
+		return keys.build().toArray();
+	}
+
+  /**
+   * public String[] infoToArray()
+   *
+   * Returns an array which contains all info in the map,
+   * sorted by their respective keys,
+   * or an empty array if the map is empty.
+   */
+	// Time complexity  O(n)
+	public String[] infoToArray() {
+		Stream.Builder<String> values = Stream.builder();
+		scan(Integer.MIN_VALUE, 1L + Integer.MAX_VALUE, (k, v) -> values.add(v));
+		return values.build().toArray(String[]::new);
+	}
+
+  /**
+   * public int shardCount()
+   *
+   * Returns the number of shards.
+   */
+	// Time complexity  O(number of shards)
+	public int shardCount() {
+		this.rebalanceLock.lock();
+		try {
+			return shards().size();
+		}
+		finally {
+			this.rebalanceLock.unlock();
+		}
+	}
+
+  /**
+   * public void rebalance()
+   *
+   * Runs a rebalancing pass now: splits the shards which are larger than maxShardSize,
+   * or had HOT_FACTOR times the average number of operations since the last pass,
+   * and joins neighbouring shards which together have at most maxShardSize / 2 items
+   * and were cold, as long as there are more shards than at the start.
+   */
+	// Time complexity  O(number of shards + size of the routing table) plus O(logn) for every split or join
+	public void rebalance() {
+		this.rebalanceLock.lock();
+		try {
+			List<Shard> shards = shards();
+			long total = 0;
+			for (Shard shard : shards) {
+				shard.lastOps = shard.ops.sumThenReset();
+				total += shard.lastOps;
+			}
+			long average = total / shards.size();
+			int count = shards.size();
+			for (Shard shard : shards) {
+				boolean large = shard.tree.size() > this.maxShardSize;
+				boolean hot = total >= MIN_HOT_OPS && shard.lastOps > HOT_FACTOR * average && shard.tree.size() >= MIN_SPLIT_SIZE;
+				if ((large || hot) && count < MAX_SHARDS && split(shard)) {
+					count++;
+				}
+			}
+			Shard left = null;
+			for (Shard shard : shards()) {
+				if (count > this.minShards && left != null && isCold(left, average) && isCold(shard, average)
+						&& left.tree.size() + shard.tree.size() <= this.maxShardSize / 2) {
+					left = merge(left, shard);
+					count--;
+				}
+				else {
+					left = shard;
+				}
+			}
+		}
+		finally {
+			this.rebalanceLock.unlock();
+		}
+	}
+
+  /**
+   * public void close()
+   *
+   * Stops the rebalancer thread. The map can still be used, without rebalancing.
+   */
+	public void close() {
+		this.closed = true;
+		if (this.rebalancer != null) {
+			this.rebalancer.interrupt();
+			joinUninterruptibly(this.rebalancer);
+		}
+	}
+
+	// Lock the shard of k for reading or writing and return it.
+	// A shard which was replaced meanwhile is unlocked and k is routed again
+	// Time complexity  O(1) expected
+	private Shard lockShard(long k, boolean write) {
+		while (true) {
+			Routing routing = this.routing;
+			Shard shard = routing.table[routing.entry(k)];
+			if (write) {
+				shard.lock.writeLock().lock();
+			}
+			else {
+				shard.lock.readLock().lock();
+			}
+			if (!shard.retired) {
+				shard.ops.increment();
+				return shard;
+			}
+			if (write) {
+				shard.lock.writeLock().unlock();
+			}
+			else {
+				shard.lock.readLock().unlock();
+			}
+		}
+	}
+
+	// Run action on the items with lo <= key < hi, one shard at a time
+	// Time complexity  O(logn + number of shards and items in the range)
+	private void scan(long lo, long hi, BiConsumer<Integer, String> action) {
+		long from = lo;
+		while (from < hi) {
+			Shard shard = lockShard(from, false);
+			long to = Math.min(hi, shard.hi);
+			int n = 0;
+			int[] keys;
+			String[] values;
+			try {
+				keys = new int[Math.min(shard.tree.size(), 16)];
+				values = new String[keys.length];
+				for (AVLTree.IAVLNode node = shard.tree.ceilingNode((int)from); node != null && node.getKey() < to; node = ((AVLTree.AVLNode)node).getSuccessor()) {
+					if (n == keys.length) {
+						keys = Arrays.copyOf(keys, 2 * n);
+						values = Arrays.copyOf(values, 2 * n);
+					}
+					keys[n] = node.getKey();
+					values[n++] = node.getValue();
+				}
+			}
+			finally {
+				shard.lock.readLock().unlock();
+			}
+			for (int j = 0; j < n; j++) {
+				action.accept(keys[j], values[j]);
+			}
+			from = to;
+		}
+	}
+
+	// The shards in key order. Called under rebalanceLock, so the routing does not change
+	// Time complexity  O(number of shards)
+	private List<Shard> shards() {
+		List<Shard> shards = new ArrayList<>();
+		Routing routing = this.routing;
+		for (long k = Integer.MIN_VALUE; k <= Integer.MAX_VALUE; ) {
+			Shard shard = routing.table[routing.entry(k)];
+			shards.add(shard);
+			k = shard.hi;
+		}
+		return shards;
+	}
+
+	private static boolean isCold(Shard shard, long average) {
+		return shard.lastOps != -1 && shard.lastOps * HOT_FACTOR <= average;
+	}
+
+	// Split shard at the routing entry boundary nearest to its median key.
+	// Returns false if it has fewer than 2 items or the table cannot be refined any more
+	// Time complexity  O(logn + routing entries of the shard)
+	private boolean split(Shard shard) {
+		shard.lock.writeLock().lock();
+		try {
+			int n = shard.tree.size();
+			if (n < 2) {
+				return false;
+			}
+			long median = shard.tree.select(n / 2 + 1).getKey();
+			long pivot = pivot(shard, median);
+			while (pivot == Long.MIN_VALUE && this.routing.shift > 32 - MAX_TABLE_BITS) {
+				refine();
+				pivot = pivot(shard, median);
+			}
+			if (pivot == Long.MIN_VALUE) {
+				return false;
+			}
+			AVLTree[] parts = shard.tree.splitInto(new int[]{(int)pivot});
+			Shard low = new Shard(shard.lo, pivot, parts[0]);
+			Shard high = new Shard(pivot, shard.hi, parts[1]);
+			// The new shards are published locked, see replace
+			low.lock.writeLock().lock();
+			high.lock.writeLock().lock();
+			try {
+				replace(shard.lo, pivot, low);
+				replace(pivot, shard.hi, high);
+				shard.retired = true;
+			}
+			finally {
+				high.lock.writeLock().unlock();
+				low.lock.writeLock().unlock();
+			}
+			return true;
+		}
+		finally {
+			shard.lock.writeLock().unlock();
+		}
+	}
+
+	// The entry boundary strictly inside the shard nearest below (or else above) the median,
+	// or Long.MIN_VALUE if the shard is a single entry
+	// Time complexity  O(1)
+	private long pivot(Shard shard, long median) {
+		Routing routing = this.routing;
+		long pivot = routing.start(routing.entry(median));
+		if (pivot <= shard.lo) {
+			pivot = routing.start(routing.entry(median) + 1L);
+		}
+		return (pivot < shard.hi) ? pivot : Long.MIN_VALUE;
+	}
+
+	// Join the neighbouring shards left and right into one shard, and return it.
+	// The write locks are taken in key order, and operations hold a single lock
+	// Time complexity  O(logn + routing entries of the shards)
+	private Shard merge(Shard left, Shard right) {
+		left.lock.writeLock().lock();
+		right.lock.writeLock().lock();
+		try {
+			AVLTree tree = left.tree;
+			if (!right.tree.empty()) { // the minimum of right is the middle node of the join
+				AVLTree.AVLNode x = new AVLTree.AVLNode(right.tree.min.getKey(), right.tree.min.getValue());
+				right.tree.delete(x.getKey());
+				tree.join(x, right.tree);
+			}
+			Shard merged = new Shard(left.lo, right.hi, tree);
+			merged.lastOps = left.lastOps + right.lastOps;
+			merged.lock.writeLock().lock(); // published locked, see replace
+			try {
+				replace(left.lo, right.hi, merged);
+				left.retired = true;
+				right.retired = true;
+			}
+			finally {
+				merged.lock.writeLock().unlock();
+			}
+			return merged;
+		}
+		finally {
+			right.lock.writeLock().unlock();
+			left.lock.writeLock().unlock();
+		}
+	}
+
+	// Route the keys in [lo, hi) to shard. Called under the write locks of the shards
+	// it replaces and of shard itself. The entries are plain array stores, so an operation
+	// may read shard without meeting a retired shard first: it then gets the lock of shard
+	// only after it is released here, which makes the tree of shard visible to it
+	// Time complexity  O(routing entries of the range)
+	private void replace(long lo, long hi, Shard shard) {
+		Routing routing = this.routing;
+		for (long j = routing.entry(lo); j < routing.entry(hi - 1) + 1L; j++) {
+			routing.table[(int)j] = shard;
+		}
+	}
+
+	// Double the routing table: every entry is cut into two entries of the same shard
+	// Time complexity  O(size of the routing table)
+	private void refine() {
+		Routing routing = this.routing;
+		Shard[] table = new Shard[2 * routing.table.length];
+		for (int j = 0; j < table.length; j++) {
+			table[j] = routing.table[j >>> 1];
+		}
+		this.routing = new Routing(routing.shift - 1, table);
+	}
+
+	private void rebalanceLoop(long intervalMillis) {
+		while (!this.closed) {
+			try {
+				Thread.sleep(intervalMillis);
+			}
+			catch (InterruptedException e) {
+				continue; // closed
+			}
+			rebalance();
+		}
+	}
+
+	private static void joinUninterruptibly(Thread thread) {
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}